@@ -0,0 +1,6 @@
+# The table schemes are read from @Column annotations at runtime, see TableSchema
+-keepattributes RuntimeVisibleAnnotations,AnnotationDefault
+-keep @interface com.malakhv.database.Column
+-keepclassmembers class * {
+    @com.malakhv.database.Column static java.lang.String *;
+}
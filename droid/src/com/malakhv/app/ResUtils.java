@@ -19,14 +19,27 @@
 package com.malakhv.app;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Resources;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 
 import com.malakhv.util.FileUtils;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
 /**
  * Class contains some things to work with app resources.
@@ -35,6 +48,21 @@ import java.io.InputStream;
 @SuppressWarnings({"unused", "WeakerAccess"})
 public final class ResUtils {
 
+    /** The buffer size to copy prepackaged databases. */
+    private static final int DB_BUFFER_SIZE = 64 * 1024;
+
+    /** The suffix of the file with version of prepackaged database. */
+    private static final String DB_VERSION_SUFFIX = ".version";
+
+    /** The suffix of temporary files. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** The suffixes of SQLite auxiliary files (journal, WAL and shared memory). */
+    private static final String[] DB_AUX_SUFFIXES = { "-journal", "-wal", "-shm" };
+
+    /** The algorithm of prepackaged database checksum. */
+    private static final String DB_CHECKSUM = "SHA-256";
+
     /**
      * Copies raw resources to file.
      * @param res The app resources.
@@ -64,6 +92,187 @@ public final class ResUtils {
         }
     }
 
+    /**
+     * Installs prepackaged database from raw resources, if the database does not exist or
+     * it has another version. The resource is copied to a temporary file, verified, synced
+     * to disk and then atomically renamed over the database file, so the database file is
+     * always either old or new one, even if the process was killed during installation.
+     * The version marker is written only after the directory is synced, so after a power
+     * loss, the marker is never newer than the database file.
+     * <p>This method should be called before the database is opened.</p>
+     * @param context The app context.
+     * @param rawId The raw resource id of prepackaged database.
+     * @param name The database name, see {@link Context#getDatabasePath(String)}.
+     * @param version The version of prepackaged database, it is stored next to the
+     *                database file to skip installation next time.
+     * @param sha256 The expected SHA-256 checksum of prepackaged database in hex form, or
+     *               null to skip verification.
+     *
+     * @return True, if the database has been installed, or false if it is already current.
+     * @throws IOException When any problem with file operations happens, or the checksum
+     * does not match; the existing database stays untouched in this case.
+     * */
+    public static boolean installDatabase(Context context, int rawId, String name, int version,
+            String sha256) throws IOException {
+        final File db = context.getDatabasePath(name);
+        final File marker = new File(db.getPath() + DB_VERSION_SUFFIX);
+        final String current = String.valueOf(version);
+        if (db.exists() && current.equals(readMarker(marker))) return false;
+
+        final File dir = db.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        final File tmp = new File(db.getPath() + TMP_SUFFIX);
+        try {
+            copyRawToFile(context.getResources(), rawId, tmp, sha256);
+            if (!tmp.renameTo(db)) throw new IOException("Cannot rename " + tmp + " to " + db);
+        } finally {
+            FileUtils.delete(tmp);
+        }
+        // The auxiliary files of old database must not be applied to the new one. They
+        // are deleted only after rename, so the old database keeps its committed pages if
+        // the rename fails; if the process dies here, the marker is not written yet, and
+        // the next call installs the database again and deletes them.
+        for (String suffix : DB_AUX_SUFFIXES) FileUtils.delete(new File(db.getPath() + suffix));
+        // The rename and deletions are durable only when the directory is synced
+        syncDirectory(db.getAbsoluteFile().getParentFile());
+        writeMarker(marker, current);
+        return true;
+    }
+
+    /**
+     * Copies raw resource to file and syncs it to disk. If {@code sha256} is null and the
+     * resource is not compressed, the data is transferred through file channels, otherwise
+     * through a large buffer with checksum calculation.
+     * @throws IOException When any problem with file operations happens, or the checksum
+     * does not match.
+     * */
+    private static void copyRawToFile(Resources res, int rawId, File file, String sha256)
+            throws IOException {
+        final MessageDigest digest = sha256 != null ? getDigest() : null;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            if (digest != null || !transferRaw(res, rawId, out)) {
+                try (InputStream in = res.openRawResource(rawId)) {
+                    final byte[] buffer = new byte[DB_BUFFER_SIZE];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        if (digest != null) digest.update(buffer, 0, count);
+                        out.write(buffer, 0, count);
+                    }
+                }
+            }
+            out.flush();
+            out.getFD().sync();
+        }
+        if (digest != null) {
+            final String actual = toHex(digest.digest());
+            if (!actual.equalsIgnoreCase(sha256.trim())) {
+                throw new IOException("Checksum mismatch of raw resource " + rawId
+                        + ": expected " + sha256 + ", actual " + actual);
+            }
+        }
+    }
+
+    /**
+     * Syncs specified directory to disk, so the renamed and deleted entries in it are
+     * durable. There is no way to open a directory by {@link java.io} API, so it's done by
+     * {@link Os}.
+     * */
+    private static void syncDirectory(File dir) throws IOException {
+        if (dir == null) return;
+        try {
+            final FileDescriptor fd = Os.open(dir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            throw new IOException("Cannot sync directory " + dir, e);
+        }
+    }
+
+    /**
+     * Transfers uncompressed raw resource to specified stream through file channels.
+     * @return True, if the resource has been transferred, or false, if it is compressed.
+     * */
+    private static boolean transferRaw(Resources res, int rawId, FileOutputStream out)
+            throws IOException {
+        final AssetFileDescriptor afd;
+        try {
+            afd = res.openRawResourceFd(rawId);
+        } catch (Resources.NotFoundException e) {
+            return false; // The resource is compressed
+        }
+        if (afd == null) return false;
+        try (AssetFileDescriptor fd = afd;
+             FileInputStream in = new FileInputStream(fd.getFileDescriptor())) {
+            final FileChannel src = in.getChannel();
+            final FileChannel dst = out.getChannel();
+            final long start = fd.getStartOffset(), length = fd.getLength();
+            long position = 0;
+            while (position < length) {
+                final long count = src.transferTo(start + position, length - position, dst);
+                if (count <= 0) throw new IOException("Unexpected end of raw resource " + rawId);
+                position += count;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The version from specified marker file, or null.
+     * */
+    private static String readMarker(File marker) {
+        if (!marker.isFile()) return null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(marker))) {
+            final String version = reader.readLine();
+            return version != null ? version.trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Atomically writes specified version to the marker file.
+     * */
+    private static void writeMarker(File marker, String version) throws IOException {
+        final File tmp = new File(marker.getPath() + TMP_SUFFIX);
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(version.getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                out.getFD().sync();
+            }
+            if (!tmp.renameTo(marker)) {
+                throw new IOException("Cannot rename " + tmp + " to " + marker);
+            }
+        } finally {
+            FileUtils.delete(tmp);
+        }
+    }
+
+    /**
+     * @return The message digest to verify prepackaged databases.
+     * */
+    private static MessageDigest getDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(DB_CHECKSUM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(DB_CHECKSUM + " is not supported", e);
+        }
+    }
+
+    /**
+     * @return The specified bytes in hex form.
+     * */
+    private static String toHex(byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) builder.append(String.format(Locale.US, "%02x", b & 0xFF));
+        return builder.toString();
+    }
+
     /**
      * Return a resource identifier for the given resource name.
      * @param res The app resources.
@@ -0,0 +1,163 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The registry of databases attached to a database. Each attached database has the
+ * reference counter: it is attached by the first {@link #attach(SQLiteDatabase, String,
+ * String)} call, and detached when the last reference has been released. The registry
+ * remembers all attached databases, so they are attached again when the database is
+ * reopened.
+ * @see DBSQLite#attach(String, String)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class AttachRegistry {
+
+    /** The tag for LogCat. */
+    private static final String TAG = AttachRegistry.class.getSimpleName();
+
+    /** The pattern of valid schema names. */
+    private static final Pattern SCHEMA_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    /** The reserved schema names. */
+    private static final String SCHEMA_MAIN = "main", SCHEMA_TEMP = "temp";
+
+    /** The attached databases, by schema name in lower case. */
+    private final Map<String, Attachment> mAttached = new HashMap<>();
+
+    /**
+     * Checks that specified {@code schema} can be used as name of attached database.
+     * @throws IllegalArgumentException If the name is not valid.
+     * */
+    static void checkSchema(String schema) {
+        if (schema == null || !SCHEMA_PATTERN.matcher(schema).matches()
+                || SCHEMA_MAIN.equalsIgnoreCase(schema)
+                || SCHEMA_TEMP.equalsIgnoreCase(schema)) {
+            throw new IllegalArgumentException("Invalid schema name: " + schema);
+        }
+    }
+
+    /**
+     * Attaches the database file with specified {@code path} as {@code schema}, or increments
+     * its reference counter, if it is already attached.
+     * @return True, if the database is attached, otherwise false.
+     * @throws IllegalArgumentException If the schema name is not valid, or it is already used
+     * by another database file.
+     * */
+    synchronized boolean attach(SQLiteDatabase db, String schema, String path) {
+        checkSchema(schema);
+        final String key = schema.toLowerCase(Locale.US);
+        final Attachment attachment = mAttached.get(key);
+        if (attachment != null) {
+            if (!attachment.path.equals(path)) {
+                throw new IllegalArgumentException("Schema " + schema + " is already used by "
+                        + attachment.path);
+            }
+            attachment.refs++;
+            return true;
+        }
+        final Attachment created = new Attachment(schema, path);
+        if (!attach(db, created)) return false;
+        mAttached.put(key, created);
+        return true;
+    }
+
+    /**
+     * Decrements the reference counter of specified {@code schema}, and detaches it, if
+     * there are no more references.
+     * @return True, if the schema has been released, otherwise false.
+     * */
+    synchronized boolean detach(SQLiteDatabase db, String schema) {
+        if (schema == null) return false;
+        final String key = schema.toLowerCase(Locale.US);
+        final Attachment attachment = mAttached.get(key);
+        if (attachment == null) return false;
+        if (--attachment.refs > 0) return true;
+        mAttached.remove(key);
+        if (db == null || !db.isOpen()) return true;
+        try {
+            db.execSQL("DETACH DATABASE " + attachment.schema);
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Cannot detach " + attachment.schema, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return True, if specified {@code schema} is attached.
+     * */
+    synchronized boolean isAttached(String schema) {
+        return schema != null && mAttached.containsKey(schema.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Attaches all registered databases again, it should be called when the database
+     * has been reopened.
+     * */
+    synchronized void reattach(SQLiteDatabase db) {
+        for (Attachment attachment : mAttached.values()) attach(db, attachment);
+    }
+
+    /**
+     * Executes ATTACH statement for specified {@code attachment}.
+     * */
+    private static boolean attach(SQLiteDatabase db, Attachment attachment) {
+        if (db == null) return false;
+        try {
+            db.execSQL("ATTACH DATABASE ? AS " + attachment.schema,
+                    new Object[] { attachment.path });
+            return true;
+        } catch (SQLException e) {
+            Log.w(TAG, "Cannot attach " + attachment.path + " as " + attachment.schema, e);
+            return false;
+        }
+    }
+
+    /**
+     * The data about an attached database.
+     * */
+    private static final class Attachment {
+
+        /** The schema name. */
+        final String schema;
+
+        /** The path to database file. */
+        final String path;
+
+        /** The number of references. */
+        int refs = 1;
+
+        /**
+         * Construct a new {@link Attachment} instance with specified parameters.
+         * */
+        Attachment(String schema, String path) {
+            this.schema = schema; this.path = path;
+        }
+    }
+}
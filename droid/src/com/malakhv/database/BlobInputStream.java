@@ -0,0 +1,167 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.provider.BaseColumns;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The stream to read a blob value of one row by chunks. Android has no API for incremental
+ * blob I/O, so each chunk is read by separate {@code substr} query, and only one chunk is
+ * kept in the cursor window and in memory at once.
+ * @see DBSQLite#openBlob(String, String, long)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class BlobInputStream extends InputStream {
+
+    /** The default size of a chunk, in bytes. */
+    static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    /** The database. */
+    private final DBSQLite mDb;
+
+    /** The table. */
+    private final String mTable;
+
+    /** The blob column. */
+    private final String mColumn;
+
+    /** The row id, as query argument. */
+    private final String mId;
+
+    /** The size of a chunk, in bytes. */
+    private final int mChunkSize;
+
+    /** The SQL expression to read a chunk. */
+    private final String mSql;
+
+    /** The current chunk, or null. */
+    private byte[] mChunk = null;
+
+    /** The position in the current chunk. */
+    private int mPosition = 0;
+
+    /** The offset of the next chunk in the blob, from 0. */
+    private long mOffset = 0;
+
+    /** The length of the blob, or -1 if it is unknown yet. */
+    private long mLength = -1;
+
+    /** True, if the last chunk has been read. */
+    private boolean mEnd = false;
+
+    /** True, if this stream has been closed. */
+    private boolean mClosed = false;
+
+    /**
+     * Construct a new {@link BlobInputStream} instance with specified parameters.
+     * */
+    BlobInputStream(DBSQLite db, String table, String column, long id, int chunkSize) {
+        mDb = db; mTable = table; mColumn = column; mId = String.valueOf(id);
+        mChunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        mSql = "SELECT substr(" + column + ", ?, ?) FROM " + table + " WHERE "
+                + BaseColumns._ID + " = ?";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return mChunk[mPosition++] & 0xFF;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        final int count = Math.min(len, mChunk.length - mPosition);
+        System.arraycopy(mChunk, mPosition, b, off, count);
+        mPosition += count;
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(long n) throws IOException {
+        checkClosed();
+        if (n <= 0) return 0;
+        final int buffered = mChunk != null ? mChunk.length - mPosition : 0;
+        if (n <= buffered) {
+            mPosition += (int) n;
+            return n;
+        }
+        mChunk = null;
+        mPosition = 0;
+        if (mEnd) return buffered;
+        if (mLength < 0) mLength = Math.max(mDb.getBlobLength(mTable, mColumn,
+                Long.parseLong(mId)), 0);
+        final long skipped = Math.min(n - buffered, Math.max(mLength - mOffset, 0));
+        mOffset += skipped;
+        return buffered + skipped;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() throws IOException {
+        checkClosed();
+        return mChunk != null ? mChunk.length - mPosition : 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        mClosed = true;
+        mChunk = null;
+    }
+
+    /**
+     * Reads the next chunk, if the current one has been read.
+     * @return True, if there is data to read, or false at the end of the blob.
+     * */
+    private boolean fill() throws IOException {
+        checkClosed();
+        if (mChunk != null && mPosition < mChunk.length) return true;
+        if (mEnd) return false;
+        final String[] args = { String.valueOf(mOffset + 1), String.valueOf(mChunkSize), mId };
+        try (Cursor cursor = mDb.getReadableDatabase().rawQuery(mSql, args)) {
+            if (!cursor.moveToFirst()) throw new IOException("No row " + mId + " in " + mTable);
+            mChunk = cursor.isNull(0) ? null : cursor.getBlob(0);
+        } catch (SQLException e) {
+            throw new IOException("Cannot read " + mColumn + " from " + mTable, e);
+        }
+        mPosition = 0;
+        final int length = mChunk != null ? mChunk.length : 0;
+        mOffset += length;
+        mEnd = length < mChunkSize;
+        return length > 0;
+    }
+
+    /**
+     * @throws IOException If this stream has been closed.
+     * */
+    private void checkClosed() throws IOException {
+        if (mClosed) throw new IOException("The stream is closed");
+    }
+}
@@ -0,0 +1,77 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a table column. The annotation is applied to the {@code String} constant with
+ * the column name in a scheme class or interface (see {@link SQLiteScheme}), and it is
+ * used by {@link TableSchema} to generate SQL expressions for the table. The columns of
+ * superclasses and interfaces go first, then the columns of the class, ordered by
+ * {@link #order()}.
+ * <pre>
+ *     public interface PlaceTable extends SQLiteScheme.BaseTable {
+ *         &#64;Column(value = Cursor.FIELD_TYPE_STRING, constraint = "NOT NULL")
+ *         String COLUMN_NAME = "name";
+ *     }
+ * </pre>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Column {
+
+    /**
+     * The type of column values, one of {@code Cursor.FIELD_TYPE_*} constants. It defines
+     * the SQL type of the column, if {@link #type()} is not specified.
+     * */
+    int value() default Cursor.FIELD_TYPE_STRING;
+
+    /**
+     * The SQL type of the column, for example, {@code BOOLEAN}. By default, it is defined
+     * by {@link #value()}.
+     * */
+    String type() default "";
+
+    /**
+     * The column constraints, for example, {@code NOT NULL DEFAULT (0)}.
+     * */
+    String constraint() default "";
+
+    /**
+     * True, if the column should be indexed.
+     * */
+    boolean index() default false;
+
+    /**
+     * The position of the column among the columns of its class or interface, the columns
+     * are ordered by this value, and then by name. The order of fields returned by
+     * reflection is not defined (for example, ART returns them sorted by name), so this
+     * value should be specified, if the order of columns matters.
+     * */
+    int order() default 0;
+}
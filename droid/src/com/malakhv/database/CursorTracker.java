@@ -0,0 +1,160 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.util.Log;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The debug tool to track cursors of a database. Each tracked cursor remembers its
+ * allocation site, and if a cursor was garbage collected without closing, the leak is
+ * reported to LogCat with this allocation site and the underlying cursor is closed.
+ * @see DBSQLite#setCursorTracking(boolean)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class CursorTracker {
+
+    /** The tag for LogCat. */
+    private static final String TAG = CursorTracker.class.getSimpleName();
+
+    /** The name of tracked database, for logs. */
+    private final String mName;
+
+    /** The open cursors. */
+    private final Map<Reference<Cursor>, Record> mOpen = new HashMap<>();
+
+    /** The queue of garbage collected cursors. */
+    private final ReferenceQueue<Cursor> mQueue = new ReferenceQueue<>();
+
+    /**
+     * Construct a new {@link CursorTracker} instance for database with specified name.
+     * */
+    CursorTracker(String name) {
+        mName = name;
+    }
+
+    /**
+     * Starts tracking of specified {@code cursor}.
+     * @return The cursor to use instead of specified one, or null.
+     * */
+    Cursor track(Cursor cursor) {
+        if (cursor == null) return null;
+        final TrackedCursor tracked = new TrackedCursor(cursor);
+        final Throwable site = new Throwable("Cursor allocated in database " + mName);
+        synchronized (this) {
+            poll();
+            mOpen.put(tracked.mRef, new Record(cursor, site));
+        }
+        return tracked;
+    }
+
+    /**
+     * @return The number of open (not closed and not garbage collected) cursors.
+     * */
+    synchronized int getOpenCount() {
+        poll();
+        return mOpen.size();
+    }
+
+    /**
+     * Reports all leaked cursors which were garbage collected without closing.
+     * @return The number of reported leaks.
+     * */
+    synchronized int poll() {
+        int count = 0;
+        Reference<? extends Cursor> ref;
+        while ((ref = mQueue.poll()) != null) {
+            final Record record = mOpen.remove(ref);
+            if (record == null) continue;
+            Log.e(TAG, "Cursor leak in database " + mName + ", it has not been closed",
+                    record.site);
+            record.cursor.close();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Prints allocation sites of all open cursors to LogCat.
+     * */
+    synchronized void dump() {
+        poll();
+        Log.w(TAG, mOpen.size() + " open cursor(s) in database " + mName);
+        for (Record record : mOpen.values()) {
+            Log.w(TAG, "Open cursor", record.site);
+        }
+    }
+
+    /**
+     * Stops tracking of a cursor, it has been closed.
+     * */
+    private synchronized void untrack(Reference<Cursor> ref) {
+        mOpen.remove(ref);
+        ref.clear();
+    }
+
+    /**
+     * The data about an open cursor.
+     * */
+    private static final class Record {
+
+        /** The underlying cursor. */
+        final Cursor cursor;
+
+        /** The allocation site. */
+        final Throwable site;
+
+        /**
+         * Construct a new {@link Record} instance with specified parameters.
+         * */
+        Record(Cursor cursor, Throwable site) {
+            this.cursor = cursor; this.site = site;
+        }
+    }
+
+    /**
+     * The cursor wrapper that notifies the tracker when it is closed.
+     * */
+    private final class TrackedCursor extends CursorWrapper {
+
+        /** The reference to this cursor, it is a key in the tracker. */
+        private final WeakReference<Cursor> mRef = new WeakReference<>(this, mQueue);
+
+        /**
+         * Construct a new {@link TrackedCursor} instance for specified {@code cursor}.
+         * */
+        TrackedCursor(Cursor cursor) {
+            super(cursor);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() {
+            super.close();
+            untrack(mRef);
+        }
+    }
+}
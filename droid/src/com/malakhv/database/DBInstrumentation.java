@@ -0,0 +1,521 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.CursorWrapper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The instrumentation of a database. It collects the latency histograms of queries per SQL
+ * expression (the values are always bound, so the expression is the "shape" of query), and
+ * reports the events to the {@link Sink}:
+ * <ul>
+ *     <li>{@link #EVENT_QUERY} &mdash; the query execution (preparing and the first cursor
+ *     window fill), with the number of rows;</li>
+ *     <li>{@link #EVENT_WINDOW_FILL} &mdash; the subsequent cursor window fills, with the
+ *     number of rows in the window;</li>
+ *     <li>{@link #EVENT_LOAD} &mdash; the loading of {@link RowList}, with the number of
+ *     loaded items;</li>
+ *     <li>{@link #EVENT_TRANSACTION} &mdash; the transaction made by
+ *     {@link DBSQLite#runInTransaction(DBSQLite.Transaction)}, with 1 if it has been
+ *     committed, or 0 if it has been rolled back.</li>
+ * </ul>
+ * The instrumentation is disabled by default, and it costs nothing but a field check in this
+ * case.
+ * @see DBSQLite#setInstrumentation(DBInstrumentation)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DBInstrumentation {
+
+    /** The tag for LogCat. */
+    private static final String TAG = DBInstrumentation.class.getSimpleName();
+
+    /** The query execution event. */
+    public static final int EVENT_QUERY = 1;
+
+    /** The cursor window fill event. */
+    public static final int EVENT_WINDOW_FILL = 2;
+
+    /** The {@link RowList} loading event. */
+    public static final int EVENT_LOAD = 3;
+
+    /** The transaction event. */
+    public static final int EVENT_TRANSACTION = 4;
+
+    /** The number of nanoseconds in one millisecond. */
+    private static final long NANOS_IN_MILLI = 1000000;
+
+    /**
+     * The receiver of instrumentation events. It is called on the thread which works
+     * with database, so it should be fast.
+     * */
+    public interface Sink {
+        /**
+         * Called when an event has happened.
+         * */
+        void onEvent(Event event);
+    }
+
+    /**
+     * The instrumentation event.
+     * */
+    public static final class Event {
+
+        /** The event type, one of {@code EVENT_*} constants. */
+        private final int mType;
+
+        /** The SQL expression, or the table, or null. */
+        private final String mName;
+
+        /** The duration, in nanoseconds. */
+        private final long mDuration;
+
+        /** The number of rows (or items), depends on event type. */
+        private final long mCount;
+
+        /** The time of event, in milliseconds since epoch. */
+        private final long mTime;
+
+        /**
+         * Construct a new {@link Event} instance with specified parameters.
+         * */
+        Event(int type, String name, long duration, long count) {
+            mType = type; mName = name; mDuration = duration; mCount = count;
+            mTime = System.currentTimeMillis();
+        }
+
+        /** @return The event type, one of {@code EVENT_*} constants. */
+        public int getType() { return mType; }
+
+        /** @return The SQL expression (for queries and window fills), the table (for
+         * loading), or null. */
+        public String getName() { return mName; }
+
+        /** @return The duration, in nanoseconds. */
+        public long getDuration() { return mDuration; }
+
+        /** @return The duration, in milliseconds. */
+        public double getDurationMillis() { return (double) mDuration / NANOS_IN_MILLI; }
+
+        /** @return The number of rows (or items), depends on event type. */
+        public long getCount() { return mCount; }
+
+        /** @return The time of event, in milliseconds since epoch. */
+        public long getTime() { return mTime; }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            final String type;
+            switch (mType) {
+                case EVENT_QUERY: type = "query"; break;
+                case EVENT_WINDOW_FILL: type = "window"; break;
+                case EVENT_LOAD: type = "load"; break;
+                case EVENT_TRANSACTION: type = "transaction"; break;
+                default: type = String.valueOf(mType);
+            }
+            return String.format(Locale.US, "%s %.3f ms, %d: %s", type, getDurationMillis(),
+                    mCount, mName);
+        }
+    }
+
+    /**
+     * The latency histogram with logarithmic buckets: the bucket {@code i} contains the
+     * values from {@code 2^(i-1)} (inclusive) to {@code 2^i} (exclusive) microseconds.
+     * */
+    public static final class Histogram {
+
+        /** The number of buckets, the last one contains all values over 2^30 us. */
+        public static final int BUCKETS = 32;
+
+        /** The number of values in each bucket. */
+        private final long[] mBuckets = new long[BUCKETS];
+
+        /** The number of values. */
+        private long mCount = 0;
+
+        /** The sum of values, in nanoseconds. */
+        private long mTotal = 0;
+
+        /** The max value, in nanoseconds. */
+        private long mMax = 0;
+
+        /**
+         * Adds specified value, in nanoseconds.
+         * */
+        synchronized void add(long nanos) {
+            final long micros = Math.max(nanos / 1000, 0);
+            final int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+            mBuckets[bucket]++;
+            mCount++;
+            mTotal += nanos;
+            if (nanos > mMax) mMax = nanos;
+        }
+
+        /** @return The number of values. */
+        public synchronized long getCount() { return mCount; }
+
+        /** @return The total time, in milliseconds. */
+        public synchronized double getTotalMillis() { return (double) mTotal / NANOS_IN_MILLI; }
+
+        /** @return The mean value, in milliseconds. */
+        public synchronized double getMeanMillis() {
+            return mCount > 0 ? (double) mTotal / mCount / NANOS_IN_MILLI : 0;
+        }
+
+        /** @return The max value, in milliseconds. */
+        public synchronized double getMaxMillis() { return (double) mMax / NANOS_IN_MILLI; }
+
+        /** @return The copy of buckets, see {@link Histogram}. */
+        public synchronized long[] getBuckets() { return mBuckets.clone(); }
+
+        /**
+         * @return The upper bound of specified percentile (from 0 to 100), in milliseconds.
+         * */
+        public synchronized double getPercentileMillis(double percentile) {
+            if (mCount == 0) return 0;
+            final long rank = (long) Math.ceil(mCount * Math.min(Math.max(percentile, 0), 100)
+                    / 100);
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += mBuckets[i];
+                if (count >= Math.max(rank, 1)) {
+                    return Math.min((double) (1L << i) / 1000, getMaxMillis());
+                }
+            }
+            return getMaxMillis();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US, "count=%d, mean=%.3f ms, p50=%.3f ms, "
+                    + "p95=%.3f ms, max=%.3f ms", mCount, getMeanMillis(),
+                    getPercentileMillis(50), getPercentileMillis(95), getMaxMillis());
+        }
+    }
+
+    /**
+     * The sink which writes events to LogCat: the slow queries and transactions as
+     * warnings, and other events as debug messages, if debug logs are enabled for
+     * {@code DBInstrumentation} tag.
+     * */
+    public static class LogcatSink implements Sink {
+
+        /** The default threshold of slow queries, in milliseconds. */
+        public static final long DEFAULT_SLOW_THRESHOLD = 100;
+
+        /** The threshold of slow queries and transactions, in nanoseconds. */
+        private final long mThreshold;
+
+        /**
+         * Construct a new {@link LogcatSink} instance with default threshold.
+         * */
+        public LogcatSink() {
+            this(DEFAULT_SLOW_THRESHOLD);
+        }
+
+        /**
+         * Construct a new {@link LogcatSink} instance with specified threshold of slow
+         * queries and transactions, in milliseconds.
+         * */
+        public LogcatSink(long threshold) {
+            mThreshold = Math.max(threshold, 0) * NANOS_IN_MILLI;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onEvent(Event event) {
+            final int type = event.getType();
+            if ((type == EVENT_QUERY || type == EVENT_TRANSACTION)
+                    && event.getDuration() >= mThreshold) {
+                Log.w(TAG, "Slow " + event);
+            } else if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, event.toString());
+            }
+        }
+    }
+
+    /**
+     * The sink which keeps the last events in memory.
+     * */
+    public static class RingBufferSink implements Sink {
+
+        /** The default number of events to keep. */
+        public static final int DEFAULT_CAPACITY = 256;
+
+        /** The last events. */
+        private final Event[] mEvents;
+
+        /** The number of received events. */
+        private long mReceived = 0;
+
+        /**
+         * Construct a new {@link RingBufferSink} instance with default capacity.
+         * */
+        public RingBufferSink() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Construct a new {@link RingBufferSink} instance with specified capacity.
+         * */
+        public RingBufferSink(int capacity) {
+            mEvents = new Event[capacity > 0 ? capacity : DEFAULT_CAPACITY];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public synchronized void onEvent(Event event) {
+            mEvents[(int) (mReceived++ % mEvents.length)] = event;
+        }
+
+        /**
+         * @return The last events, from oldest to newest.
+         * */
+        public synchronized List<Event> getEvents() {
+            final int size = (int) Math.min(mReceived, mEvents.length);
+            final List<Event> events = new ArrayList<>(size);
+            for (long i = mReceived - size; i < mReceived; i++) {
+                events.add(mEvents[(int) (i % mEvents.length)]);
+            }
+            return events;
+        }
+
+        /**
+         * @return The number of received events, including overwritten ones.
+         * */
+        public synchronized long getReceived() {
+            return mReceived;
+        }
+
+        /**
+         * Removes all events.
+         * */
+        public synchronized void clear() {
+            mReceived = 0;
+            Arrays.fill(mEvents, null);
+        }
+    }
+
+    /** The sink of events, or null. */
+    private final Sink mSink;
+
+    /** The latency histograms, by SQL expression. */
+    private final Map<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a new {@link DBInstrumentation} instance with specified sink.
+     * @param sink The sink of events, or null to collect histograms only.
+     * */
+    public DBInstrumentation(Sink sink) {
+        mSink = sink;
+    }
+
+    /**
+     * @return The sink of events, or null.
+     * */
+    public Sink getSink() {
+        return mSink;
+    }
+
+    /**
+     * @return The latency histogram of specified SQL expression, or null.
+     * */
+    public Histogram getHistogram(String sql) {
+        return sql != null ? mHistograms.get(sql) : null;
+    }
+
+    /**
+     * @return The snapshot of all latency histograms, by SQL expression.
+     * */
+    public Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(new HashMap<>(mHistograms));
+    }
+
+    /**
+     * Removes all collected histograms.
+     * */
+    public void reset() {
+        mHistograms.clear();
+    }
+
+    /**
+     * Prints all latency histograms to LogCat.
+     * */
+    public void dump() {
+        for (Map.Entry<String, Histogram> entry : mHistograms.entrySet()) {
+            Log.i(TAG, entry.getValue() + ": " + entry.getKey());
+        }
+    }
+
+    /**
+     * Records an event.
+     * */
+    void record(int type, String name, long duration, long count) {
+        if (type == EVENT_QUERY && name != null) {
+            Histogram histogram = mHistograms.get(name);
+            if (histogram == null) {
+                final Histogram created = new Histogram();
+                histogram = mHistograms.putIfAbsent(name, created);
+                if (histogram == null) histogram = created;
+            }
+            histogram.add(duration);
+        }
+        if (mSink == null) return;
+        try {
+            mSink.onEvent(new Event(type, name, duration, count));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Instrumentation sink failed", e);
+        }
+    }
+
+    /**
+     * Wraps specified cursor to measure the query execution and the cursor window fills.
+     * @param prepare The time of query preparing, in nanoseconds.
+     * */
+    Cursor wrap(Cursor cursor, String sql, long prepare) {
+        return cursor != null ? new InstrumentedCursor(cursor, sql, prepare) : null;
+    }
+
+    /**
+     * The cursor wrapper which measures the query execution and the cursor window fills.
+     * The query is executed by SQLite during the first window fill, which happens on
+     * the first {@link #getCount()} or move call.
+     * */
+    private final class InstrumentedCursor extends CursorWrapper {
+
+        /** The SQL expression. */
+        private final String mSql;
+
+        /** The wrapped cursor, if it has cursor window, or null. */
+        private final AbstractWindowedCursor mWindowed;
+
+        /** The time of query preparing, in nanoseconds. */
+        private final long mPrepare;
+
+        /** True, if the query has been executed. */
+        private boolean mExecuted = false;
+
+        /** The last known cursor window. */
+        private CursorWindow mWindow = null;
+
+        /** The start position of last known cursor window. */
+        private int mWindowStart = -1;
+
+        /**
+         * Construct a new {@link InstrumentedCursor} instance with specified parameters.
+         * */
+        InstrumentedCursor(Cursor cursor, String sql, long prepare) {
+            super(cursor);
+            mSql = sql; mPrepare = prepare;
+            mWindowed = cursor instanceof AbstractWindowedCursor
+                    ? (AbstractWindowedCursor) cursor : null;
+        }
+
+        /**
+         * Executes the query, if it has not been executed yet.
+         * */
+        private void execute() {
+            if (mExecuted) return;
+            mExecuted = true;
+            final long start = System.nanoTime();
+            final int count = super.getCount();
+            record(EVENT_QUERY, mSql, mPrepare + System.nanoTime() - start, count);
+            checkWindow(0);
+        }
+
+        /**
+         * Reports the window fill, if the cursor window has been changed since the last
+         * check.
+         * @param start The start time of operation, or 0 to not report.
+         * */
+        private void checkWindow(long start) {
+            if (mWindowed == null) return;
+            final CursorWindow window = mWindowed.getWindow();
+            final int windowStart = window != null ? window.getStartPosition() : -1;
+            if (window == mWindow && windowStart == mWindowStart) return;
+            mWindow = window; mWindowStart = windowStart;
+            if (start > 0) {
+                record(EVENT_WINDOW_FILL, mSql, System.nanoTime() - start,
+                        window != null ? window.getNumRows() : 0);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int getCount() {
+            execute();
+            return super.getCount();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean moveToPosition(int position) {
+            execute();
+            final long start = System.nanoTime();
+            final boolean result = super.moveToPosition(position);
+            checkWindow(start);
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean move(int offset) {
+            return moveToPosition(getPosition() + offset);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean moveToFirst() {
+            return moveToPosition(0);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean moveToLast() {
+            return moveToPosition(getCount() - 1);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean moveToNext() {
+            return moveToPosition(getPosition() + 1);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean moveToPrevious() {
+            return moveToPosition(getPosition() - 1);
+        }
+    }
+}
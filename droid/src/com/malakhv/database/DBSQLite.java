@@ -21,15 +21,33 @@ package com.malakhv.database;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseErrorHandler;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteTransactionListener;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+import android.util.Log;
 
+import com.malakhv.app.ResUtils;
+import com.malakhv.location.LatLon;
 import com.malakhv.util.StrUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The basic class for working with SQLite database.
@@ -38,8 +56,85 @@ import java.util.Arrays;
 @SuppressWarnings({"unused", "WeakerAccess"})
 public abstract class DBSQLite extends SQLiteOpenHelper {
 
+    /** The conflict clauses, by {@code SQLiteDatabase.CONFLICT_*} constants. */
+    private static final String[] CONFLICT_VALUES = { "", " OR ROLLBACK", " OR ABORT",
+            " OR FAIL", " OR IGNORE", " OR REPLACE" };
+
+    /** The prefix of schemas to merge databases. */
+    private static final String MERGE_SCHEMA = "merge_";
+
+    /** The counter of merges, to make unique schema names. */
+    private static final AtomicInteger sMergeCount = new AtomicInteger();
+
+    /** The initial search radius for nearest rows, in meters. */
+    private static final double NEAREST_START_RADIUS = 1000;
+
+    /** The number of bounds arguments in spatial queries: latitudes and two longitude ranges. */
+    private static final int SPATIAL_BOUNDS_SIZE = 6;
+
+    /** The max search radius for nearest rows (a half of the equator), in meters. */
+    private static final double NEAREST_MAX_RADIUS = Math.PI * LatLon.EARTH_RADIUS;
+
+    /** The tag for LogCat. */
+    private static final String TAG = DBSQLite.class.getSimpleName();
+
+    /**
+     * The observer of changes in database tables.
+     * @see #registerObserver(TableObserver, String...)
+     * */
+    public interface TableObserver {
+        /**
+         * Called on a background thread when tables have been changed.
+         * @param tables The names of changed tables, in lower case.
+         * */
+        void onTablesChanged(Set<String> tables);
+    }
+
+    /**
+     * The batch of database operations to execute in one transaction.
+     * @see #runInTransaction(Transaction)
+     * */
+    public interface Transaction {
+        /**
+         * Executes database operations. The changes made directly via {@code db}, or via
+         * static methods of {@link DBSQLite}, are not tracked, so call
+         * {@link DBSQLite#notifyTableChanged(String...)} for changed tables here, and
+         * observers will be notified after commit.
+         * @throws SQLException If something went wrong, the transaction will be rolled back.
+         * */
+        void run(SQLiteDatabase db);
+    }
+
     private final Context mContext;
 
+    /** The registry of table observers. */
+    private final TableNotifier mNotifier = new TableNotifier();
+
+    /**
+     * The registry of attached databases.
+     * @see #attach(String, String)
+     * */
+    private final AttachRegistry mAttached = new AttachRegistry();
+
+    /**
+     * The tracker of open cursors, or null if tracking is disabled.
+     * @see #setCursorTracking(boolean)
+     * */
+    private volatile CursorTracker mTracker = null;
+
+    /**
+     * The instrumentation, or null if it is disabled.
+     * @see #setInstrumentation(DBInstrumentation)
+     * */
+    private volatile DBInstrumentation mInstrumentation = null;
+
+    /**
+     * The registered migrations, by target version and step.
+     * @see #addMigration(Migration)
+     * @see #getMigrationKey(int, int)
+     * */
+    private final SortedMap<Long, Migration> mMigrations = new TreeMap<>();
+
     /**
      * Make a new {@link DBSQLite} instance with specified parameters.
      * */
@@ -65,6 +160,22 @@ public abstract class DBSQLite extends SQLiteOpenHelper {
         return mContext;
     }
 
+    /**
+     * Installs prepackaged database from raw resources over this database, if it does not
+     * exist or has another version. This database is closed before installation, it will be
+     * reopened by next {@link #getReadableDatabase()} or {@link #getWritableDatabase()} call.
+     * @see ResUtils#installDatabase(Context, int, String, int, String)
+     * @return True, if the database has been installed, or false if it is already current.
+     * @throws IOException When any problem with file operations happens.
+     * */
+    public synchronized boolean installDatabase(int rawId, int version, String sha256)
+            throws IOException {
+        final String name = getDatabaseName();
+        if (name == null) throw new IOException("Cannot install in-memory database");
+        close();
+        return ResUtils.installDatabase(mContext, rawId, name, version, sha256);
+    }
+
     /**
      * Returns readable cursor for a table.
      * @return The readable cursor, or null.
@@ -100,53 +211,826 @@ public abstract class DBSQLite extends SQLiteOpenHelper {
                 selectionArgs, null, null, null);
     }
 
+    /**
+     * Registers specified {@code observer} to be notified about changes in specified
+     * {@code tables}, or in all tables, if there are no tables specified. Only the changes
+     * made via this object are observed: {@link #execSQL(String)}, {@link #clearTable(String)},
+     * {@link #dropTable(String)} and {@link #notifyTableChanged(String...)}. The changes made
+     * in {@link #runInTransaction(Transaction)} are notified after commit, and all changes
+     * made during the notification delay are coalesced into one notification.
+     * @see #setNotificationDelay(long)
+     * */
+    public void registerObserver(TableObserver observer, String... tables) {
+        mNotifier.register(observer, tables);
+    }
+
+    /**
+     * Unregisters specified {@code observer}.
+     * */
+    public void unregisterObserver(TableObserver observer) {
+        mNotifier.unregister(observer);
+    }
+
+    /**
+     * Sets the delay between the first change and the notification of observers, in
+     * milliseconds. All changes made during this delay are coalesced into one notification.
+     * */
+    public void setNotificationDelay(long delay) {
+        mNotifier.setDelay(delay);
+    }
+
+    /**
+     * Notifies observers that specified tables have been changed. Call this method after
+     * any changes made directly via {@link SQLiteDatabase}.
+     * */
+    public void notifyTableChanged(String... tables) {
+        mNotifier.notifyChanged(tables);
+    }
+
+    /**
+     * Executes specified {@code transaction} on writable database in one transaction. The
+     * observers are notified about all changes made in the transaction only if it has been
+     * committed. The changes made via {@code db} passed to the transaction should be
+     * reported by {@link #notifyTableChanged(String...)}, see {@link Transaction#run}.
+     * <p>If the database is already in a transaction, which has been opened directly via
+     * {@link SQLiteDatabase#beginTransaction()}, this transaction is nested, and its outcome
+     * is unknown here, so the changes are not notified: call
+     * {@link #notifyTableChanged(String...)} after the outer transaction is committed.</p>
+     * @return True, if the transaction has been committed (or successfully ended, if it is
+     * nested), otherwise false.
+     * */
+    public boolean runInTransaction(Transaction transaction) {
+        if (transaction == null) return false;
+        final SQLiteDatabase db = getWritableDatabase();
+        final DBInstrumentation instrumentation = mInstrumentation;
+        final long start = instrumentation != null ? System.nanoTime() : 0;
+        final boolean outermost = !db.inTransaction();
+        // The changes are collected by the transaction which has started collection, it's
+        // this one, or an outer one started by this method
+        final boolean collector = mNotifier.beginTransaction();
+        // The listener is called before COMMIT is executed, so it only says that
+        // the transaction is going to be committed
+        final boolean[] committing = { false };
+        final boolean[] committed = { false };
+        try {
+            if (outermost) {
+                db.beginTransactionWithListener(new SQLiteTransactionListener() {
+                    @Override public void onBegin() { /* Do nothing */ }
+                    @Override public void onCommit() { committing[0] = true; }
+                    @Override public void onRollback() { committing[0] = false; }
+                });
+            } else {
+                db.beginTransaction();
+            }
+            boolean success = false, ended = false;
+            try {
+                transaction.run(db);
+                db.setTransactionSuccessful();
+                success = true;
+            } catch (SQLException e) {
+                Log.e(TAG, "Transaction failed", e);
+            } finally {
+                try {
+                    db.endTransaction();
+                    ended = true;
+                } catch (SQLException e) {
+                    Log.e(TAG, "Transaction commit failed", e);
+                }
+            }
+            committed[0] = success && ended && (!outermost || committing[0]);
+            return committed[0];
+        } finally {
+            // The changes of a transaction nested into unknown one are not notified
+            if (collector) mNotifier.endTransaction(outermost && committed[0]);
+            if (instrumentation != null && outermost) {
+                instrumentation.record(DBInstrumentation.EVENT_TRANSACTION, null,
+                        System.nanoTime() - start, committed[0] ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * Executes a single SQL statement on writable database and notifies observers about
+     * changed table.
+     * @see #execSQL(SQLiteDatabase, String)
+     * */
+    public boolean execSQL(String sql) {
+        final boolean result = execSQL(getWritableDatabase(), sql);
+        if (result) mNotifier.notifyChanged(TableNotifier.findTable(sql));
+        return result;
+    }
+
+    /**
+     * Removes all data from specified table of writable database and notifies observers.
+     * @see #clearTable(SQLiteDatabase, String)
+     * */
+    public boolean clearTable(String table) {
+        final boolean result = clearTable(getWritableDatabase(), table);
+        if (result) mNotifier.notifyChanged(table);
+        return result;
+    }
+
+    /**
+     * Drops specified table from writable database and notifies observers.
+     * @see #dropTable(SQLiteDatabase, String)
+     * */
+    public boolean dropTable(String table) {
+        final boolean result = dropTable(getWritableDatabase(), table);
+        if (result) mNotifier.notifyChanged(table);
+        return result;
+    }
+
+    /**
+     * Called when the database has been opened. The default implementation attaches all
+     * databases registered via {@link #attach(String, String)} again, so a child class
+     * should call super method.
+     * */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        mAttached.reattach(db);
+    }
+
+    /**
+     * Attaches the database file with specified {@code path} as {@code schema}, so its tables
+     * can be used as {@code schema.table} in all methods of this class (and in
+     * {@link RowList}), see {@link #qualify(String, String)}. The attached databases are
+     * reference counted: each call should be paired with {@link #detach(String)} call, and
+     * the database is detached when the last reference has been released. The attached
+     * databases are attached again, if this database has been reopened.
+     * <p>Note, Android disables write-ahead logging while any database is attached.</p>
+     * @return True, if the database is attached, otherwise false.
+     * @throws IllegalArgumentException If the schema name is not valid, or it is already used
+     * by another database file.
+     * */
+    public boolean attach(String schema, String path) {
+        return mAttached.attach(getWritableDatabase(), schema, path);
+    }
+
+    /**
+     * Releases the database attached as {@code schema}, see {@link #attach(String, String)}.
+     * This method should not be called inside a transaction.
+     * @return True, if the database has been released, otherwise false.
+     * */
+    public boolean detach(String schema) {
+        return mAttached.detach(getWritableDatabase(), schema);
+    }
+
+    /**
+     * @return True, if the database is attached as {@code schema} via
+     * {@link #attach(String, String)}.
+     * */
+    public boolean isAttached(String schema) {
+        return mAttached.isAttached(schema);
+    }
+
+    /**
+     * @return The name of {@code table} in specified {@code schema}, or just {@code table}
+     * if the schema is empty.
+     * */
+    public static String qualify(String schema, String table) {
+        return StrUtils.isEmpty(schema) ? table : schema + StrUtils.CHAR_DOT + table;
+    }
+
+    /**
+     * Copies rows from one table to another by one {@code INSERT ... SELECT} statement, in
+     * one transaction. The tables can be in different attached databases, see
+     * {@link #qualify(String, String)}.
+     * @param from The source table.
+     * @param to The target table.
+     * @param columns The columns to copy, or null to copy all columns (both tables must have
+     *                the same columns in this case).
+     * @param selection The filter declaring which rows to copy, or null to copy all rows.
+     * @param selectionArgs The arguments of {@code selection}.
+     * @param conflict The conflict resolution algorithm, one of
+     *                 {@code SQLiteDatabase.CONFLICT_*} constants.
+     * @return The number of copied rows, or -1 if something went wrong.
+     * */
+    public long copyTable(String from, String to, String[] columns, String selection,
+            String[] selectionArgs, int conflict) {
+        final long[] count = { 0 };
+        final boolean result = runInTransaction(db -> {
+            count[0] = copyTable(db, from, to, columns, selection, selectionArgs, conflict);
+            if (count[0] > 0) mNotifier.notifyChanged(to);
+        });
+        return result ? count[0] : -1;
+    }
+
+    /**
+     * Copies all rows of specified tables from one schema to another, in one transaction.
+     * The tables must have the same columns in both schemas.
+     * @param fromSchema The source schema, or null for main database.
+     * @param toSchema The target schema, or null for main database.
+     * @param conflict The conflict resolution algorithm, one of
+     *                 {@code SQLiteDatabase.CONFLICT_*} constants.
+     * @return The number of copied rows, or -1 if something went wrong (and nothing is
+     * changed).
+     * */
+    public long copyTables(String fromSchema, String toSchema, int conflict,
+            String... tables) {
+        if (tables == null || tables.length == 0) return 0;
+        final long[] count = { 0 };
+        final boolean result = runInTransaction(db -> {
+            for (String table : tables) {
+                final long copied = copyTable(db, qualify(fromSchema, table),
+                        qualify(toSchema, table), null, null, null, conflict);
+                if (copied > 0) mNotifier.notifyChanged(qualify(toSchema, table));
+                count[0] += copied;
+            }
+        });
+        return result ? count[0] : -1;
+    }
+
+    /**
+     * Merges specified tables of the database file with specified {@code path} (for example,
+     * a downloaded data pack) into this database, in one transaction. The database file is
+     * attached for the merge time only.
+     * @param conflict The conflict resolution algorithm, one of
+     *                 {@code SQLiteDatabase.CONFLICT_*} constants.
+     * @return The number of merged rows, or -1 if something went wrong (and nothing is
+     * changed).
+     * */
+    public long mergeDatabase(String path, int conflict, String... tables) {
+        final String schema = MERGE_SCHEMA + sMergeCount.incrementAndGet();
+        if (!attach(schema, path)) return -1;
+        try {
+            return copyTables(schema, null, conflict, tables);
+        } finally {
+            detach(schema);
+        }
+    }
+
+    /**
+     * Copies rows from one table to another by one {@code INSERT ... SELECT} statement.
+     * @return The number of copied rows.
+     * @throws SQLException If something went wrong.
+     * @see #copyTable(String, String, String[], String, String[], int)
+     * */
+    public static long copyTable(SQLiteDatabase db, String from, String to, String[] columns,
+            String selection, String[] selectionArgs, int conflict) {
+        final String list = columns != null && columns.length > 0
+                ? TextUtils.join(", ", columns) : null;
+        final StringBuilder sql = new StringBuilder("INSERT");
+        if (conflict > 0 && conflict < CONFLICT_VALUES.length) {
+            sql.append(CONFLICT_VALUES[conflict]);
+        }
+        sql.append(" INTO ").append(to);
+        if (list != null) sql.append(" (").append(list).append(")");
+        sql.append(" SELECT ").append(list != null ? list : "*").append(" FROM ").append(from);
+        if (!StrUtils.isEmpty(selection)) sql.append(" WHERE ").append(selection);
+        try (SQLiteStatement statement = db.compileStatement(sql.toString())) {
+            if (selectionArgs != null) statement.bindAllArgsAsStrings(selectionArgs);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Registers specified migration step. The registered steps are applied in
+     * {@link #onUpgrade(SQLiteDatabase, int, int)}, so this method should be called in
+     * constructor of a child class. There can be several steps to the same version, with
+     * different {@link Migration#getStep()}.
+     * @throws IllegalArgumentException If there is a registered step with the same version
+     * and step number.
+     * @see Migration
+     * */
+    protected void addMigration(Migration migration) {
+        if (migration == null) return;
+        final long key = getMigrationKey(migration.getVersion(), migration.getStep());
+        synchronized (mMigrations) {
+            if (mMigrations.containsKey(key)) {
+                throw new IllegalArgumentException("Migration to version "
+                        + migration.getVersion() + ", step " + migration.getStep()
+                        + " is already registered");
+            }
+            mMigrations.put(key, migration);
+        }
+    }
+
+    /**
+     * @return The key of migration step, the keys are ordered by version and then by step.
+     * */
+    private static long getMigrationKey(int version, int step) {
+        return ((long) version << 32) | (step & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Called when the database needs to be upgraded. The default implementation applies
+     * schema part of all registered migrations from {@code oldVersion} (exclusive) to
+     * {@code newVersion} (inclusive), and schedules their data part. If a migration changes
+     * the table (see {@link Migration#getTables()}), which has not completed data part of
+     * a previous migration (from this or earlier upgrade), that data part is completed here,
+     * before the schema of the table is changed again.
+     * @see #addMigration(Migration)
+     * @see #runPendingMigrations(Migration.Listener)
+     * */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL(Migration.SQL_CREATE_STATE);
+        synchronized (mMigrations) {
+            final List<Migration> pending = new ArrayList<>();
+            for (long key : getPendingMigrations(db)) {
+                final Migration migration = mMigrations.get(key);
+                if (migration != null) pending.add(migration);
+            }
+            for (Migration migration : mMigrations.subMap(getMigrationKey(oldVersion + 1, 0),
+                    getMigrationKey(newVersion + 1, 0)).values()) {
+                completeOverlapped(db, pending, migration);
+                migration.onSchema(db);
+                if (migration.hasData()) {
+                    new Migration.State().save(db, migration.getVersion(),
+                            migration.getStep(), false);
+                    pending.add(migration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes data part of {@code pending} migrations, which work with the tables of
+     * specified {@code migration}, and removes them from the list.
+     * */
+    private static void completeOverlapped(SQLiteDatabase db, List<Migration> pending,
+            Migration migration) {
+        final Set<String> tables = new HashSet<>();
+        for (String table : migration.getTables()) tables.add(table.toLowerCase(Locale.ROOT));
+        if (tables.isEmpty()) return;
+        final Iterator<Migration> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            final Migration previous = iterator.next();
+            boolean overlaps = false;
+            for (String table : previous.getTables()) {
+                overlaps |= tables.contains(table.toLowerCase(Locale.ROOT));
+            }
+            if (!overlaps) continue;
+            final int version = previous.getVersion(), step = previous.getStep();
+            final Migration.State state = Migration.State.load(db, version, step);
+            while (!previous.onData(db, state)) { /* Next chunk */ }
+            state.save(db, version, step, true);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return True, if there are migrations with not completed data part.
+     * @see #runPendingMigrations(Migration.Listener)
+     * */
+    public boolean hasPendingMigrations() {
+        return getPendingMigrations(getReadableDatabase()).length > 0;
+    }
+
+    /**
+     * Completes data part of all pending migrations, chunk by chunk. If the process was
+     * killed, the next call of this method continues from the last completed chunk. This
+     * method can take a long time, so, please, call it from a background thread before
+     * using the migrated tables.
+     * @param listener The listener of progress, or null.
+     * @return True, if all migrations have been completed, otherwise false.
+     * */
+    public boolean runPendingMigrations(Migration.Listener listener) {
+        final SQLiteDatabase db = getWritableDatabase();
+        for (long key : getPendingMigrations(db)) {
+            final int version = (int) (key >> 32), step = (int) key;
+            final Migration migration;
+            synchronized (mMigrations) {
+                migration = mMigrations.get(key);
+            }
+            final Migration.State state = Migration.State.load(db, version, step);
+            boolean completed = false;
+            while (!completed) {
+                db.beginTransaction();
+                try {
+                    // The unknown migration cannot be resumed, just forget it
+                    completed = migration == null || migration.onData(db, state);
+                    state.save(db, version, step, completed);
+                    db.setTransactionSuccessful();
+                } catch (SQLException e) {
+                    Log.e(TAG, "Migration to version " + version + ", step " + step
+                            + " failed", e);
+                    return false;
+                } finally {
+                    db.endTransaction();
+                }
+                if (listener != null) {
+                    listener.onProgress(version, state.getProgress(), state.getTotal());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The keys of migration steps with not completed data part, in ascending order.
+     * @see #getMigrationKey(int, int)
+     * */
+    private static long[] getPendingMigrations(SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("SELECT " + Migration.COLUMN_VERSION + ", "
+                + Migration.COLUMN_STEP + " FROM " + Migration.TABLE_STATE + " ORDER BY "
+                + Migration.COLUMN_VERSION + ", " + Migration.COLUMN_STEP, null)) {
+            final long[] keys = new long[c.getCount()];
+            for (int i = 0; c.moveToNext(); i++) {
+                keys[i] = getMigrationKey(c.getInt(0), c.getInt(1));
+            }
+            return keys;
+        } catch (SQLiteException e) {
+            return new long[0]; // No state table, no migrations
+        }
+    }
+
+    /**
+     * Enables or disables tracking of cursors returned by this database. It is a debug tool:
+     * each cursor remembers its allocation site, and each cursor that was garbage collected
+     * without closing is reported to LogCat as a leak and closed. Please, don't use it in
+     * release builds.
+     * @see #getOpenCursorCount()
+     * @see #dumpOpenCursors()
+     * */
+    public void setCursorTracking(boolean enabled) {
+        if (enabled == (mTracker != null)) return;
+        mTracker = enabled ? new CursorTracker(getDatabaseName()) : null;
+    }
+
+    /**
+     * @return The number of open cursors returned by this database, or {@code -1} if
+     * tracking is disabled.
+     * @see #setCursorTracking(boolean)
+     * */
+    public int getOpenCursorCount() {
+        final CursorTracker tracker = mTracker;
+        return tracker != null ? tracker.getOpenCount() : -1;
+    }
+
+    /**
+     * Prints allocation sites of all open cursors returned by this database to LogCat, if
+     * tracking is enabled.
+     * @see #setCursorTracking(boolean)
+     * */
+    public void dumpOpenCursors() {
+        final CursorTracker tracker = mTracker;
+        if (tracker != null) tracker.dump();
+    }
+
+    /**
+     * Starts tracking of specified {@code cursor}, if tracking is enabled.
+     * @return The cursor to use instead of specified one.
+     * @see #setCursorTracking(boolean)
+     * */
+    protected Cursor track(Cursor cursor) {
+        final CursorTracker tracker = mTracker;
+        return tracker != null ? tracker.track(cursor) : cursor;
+    }
+
+    /**
+     * Enables the instrumentation of this database: query latencies, cursor window fills,
+     * {@link RowList} loading and transactions, or disables it, if {@code instrumentation}
+     * is null. It is disabled by default.
+     * @see DBInstrumentation
+     * */
+    public void setInstrumentation(DBInstrumentation instrumentation) {
+        mInstrumentation = instrumentation;
+    }
+
+    /**
+     * @return The instrumentation of this database, or null if it is disabled.
+     * */
+    public DBInstrumentation getInstrumentation() {
+        return mInstrumentation;
+    }
+
+    /**
+     * Runs specified query and returns the cursor, instrumented and tracked, if it is
+     * enabled.
+     * @see #setInstrumentation(DBInstrumentation)
+     * @see #setCursorTracking(boolean)
+     * */
+    private Cursor rawQuery(SQLiteDatabase db, String sql, String[] args) {
+        final DBInstrumentation instrumentation = mInstrumentation;
+        if (instrumentation == null) return track(db.rawQuery(sql, args));
+        final long start = System.nanoTime();
+        final Cursor cursor = db.rawQuery(sql, args);
+        return track(instrumentation.wrap(cursor, sql, System.nanoTime() - start));
+    }
+
     /**
      * Returns readable cursor for a table.
      * @return The readable cursor, or null.
+     * @see #getReadableCursorOrThrow(String, String[], String, String, String[], String,
+     * String, String)
      * */
     public Cursor getReadableCursor(String table, String[] columns, String locale,
             String selection, String[] selectionArgs, String groupBy, String having,
             String orderBy) {
+        try {
+            return getReadableCursorOrThrow(table, columns, locale, selection, selectionArgs,
+                    groupBy, having, orderBy);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Cannot query table " + table, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns readable cursor for a table.
+     * @return The readable cursor, never null.
+     * @throws SQLiteException If the database cannot be opened or the query is wrong.
+     * */
+    public Cursor getReadableCursorOrThrow(String table, String[] columns, String locale,
+            String selection, String[] selectionArgs, String groupBy, String having,
+            String orderBy) {
+        SQLQuery query = SQLQuery.from(table).columns(columns).where(selection, selectionArgs)
+                .groupBy(groupBy, having).orderBy(orderBy);
+        if (!StrUtils.isEmpty(locale)) {
+            query = query.whereEquals(SQLiteScheme.LocaleTable.COLUMN_LOCALE, locale);
+        }
+        return getReadableCursorOrThrow(query);
+    }
+
+    /**
+     * Returns readable cursor for specified query.
+     * @return The readable cursor, or null.
+     * */
+    public Cursor getReadableCursor(SQLQuery query) {
+        try {
+            return getReadableCursorOrThrow(query);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Cannot query " + query, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns readable cursor for specified query.
+     * @return The readable cursor, never null.
+     * @throws SQLiteException If the database cannot be opened or the query is wrong.
+     * */
+    public Cursor getReadableCursorOrThrow(SQLQuery query) {
+        return rawQuery(getReadableDatabase(), query.getSql(), query.getArgs());
+    }
+
+    /**
+     * @return The column names of specified {@code table} (it can be qualified by schema,
+     * see {@link #qualify(String, String)}), or empty array if they cannot be read.
+     * */
+    public String[] getColumns(String table) {
+        if (StrUtils.isEmpty(table)) return new String[0];
+        final int dot = table.lastIndexOf(StrUtils.CHAR_DOT);
+        final String sql = "PRAGMA " + (dot > 0 ? table.substring(0, dot + 1) : "")
+                + "table_info(" + DatabaseUtils.sqlEscapeString(table.substring(dot + 1)) + ")";
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, null)) {
+            final String[] columns = new String[cursor.getCount()];
+            final int index = cursor.getColumnIndexOrThrow("name");
+            for (int i = 0; cursor.moveToNext(); i++) columns[i] = cursor.getString(index);
+            return columns;
+        } catch (SQLException e) {
+            Log.w(TAG, "Cannot read columns of " + table, e);
+            return new String[0];
+        }
+    }
+
+    /**
+     * @return The names (in lower case) of columns of specified {@code table} which are
+     * declared as BLOB, or empty set if they cannot be read.
+     * @see #getColumns(String)
+     * */
+    public Set<String> getBlobColumns(String table) {
+        final Set<String> result = new HashSet<>();
+        if (StrUtils.isEmpty(table)) return result;
+        final int dot = table.lastIndexOf(StrUtils.CHAR_DOT);
+        final String sql = "PRAGMA " + (dot > 0 ? table.substring(0, dot + 1) : "")
+                + "table_info(" + DatabaseUtils.sqlEscapeString(table.substring(dot + 1)) + ")";
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql, null)) {
+            final int name = cursor.getColumnIndexOrThrow("name");
+            final int type = cursor.getColumnIndexOrThrow("type");
+            while (cursor.moveToNext()) {
+                final String declared = cursor.getString(type);
+                if (declared != null && declared.toUpperCase(Locale.ROOT).contains("BLOB")) {
+                    result.add(cursor.getString(name).toLowerCase(Locale.ROOT));
+                }
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Cannot read columns of " + table, e);
+        }
+        return result;
+    }
+
+    /**
+     * Opens the stream to read the blob value of specified {@code column} in the row with
+     * specified {@code id}. The value is read by chunks, so large values never fill the
+     * cursor window or memory. The stream should be closed.
+     * @see #openBlob(String, String, long, int)
+     * */
+    public InputStream openBlob(String table, String column, long id) {
+        return openBlob(table, column, id, BlobInputStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Opens the stream to read the blob value of specified {@code column} in the row with
+     * specified {@code id}, by chunks of specified size in bytes.
+     * @throws IllegalArgumentException If the table or column is empty.
+     * */
+    public InputStream openBlob(String table, String column, long id, int chunkSize) {
+        if (StrUtils.isEmpty(table) || StrUtils.isEmpty(column)) {
+            throw new IllegalArgumentException("The table and column must be not empty");
+        }
+        return new BlobInputStream(this, table, column, id, chunkSize);
+    }
+
+    /**
+     * @return The length in bytes of the blob value of specified {@code column} in the row
+     * with specified {@code id}, or -1 if the value is null or it cannot be read.
+     * */
+    public long getBlobLength(String table, String column, long id) {
+        final String sql = "SELECT length(" + column + ") FROM " + table + " WHERE "
+                + BaseColumns._ID + " = ?";
+        try (Cursor cursor = getReadableDatabase().rawQuery(sql,
+                new String[] { String.valueOf(id) })) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } catch (SQLException e) {
+            Log.w(TAG, "Cannot read length of " + column + " in " + table, e);
+            return -1;
+        }
+    }
 
+    /**
+     * Returns readable cursor with full-text search results: all columns of matched rows
+     * and {@link SQLiteScheme.FtsIndex#COLUMN_SNIPPET}, ordered by rank.
+     * @param index The full-text search index.
+     * @param query The user input to search, each word is used as a prefix term.
+     * @param locale The locale of rows to search, or null for all rows.
+     * @param limit The max number of results, or 0 for no limit.
+     * @return The readable cursor, or null.
+     * */
+    public Cursor getSearchCursor(SQLiteScheme.FtsIndex index, String query, String locale,
+            int limit) {
+        final String match = index != null ? index.toMatchQuery(query) : null;
+        if (match == null) return null;
         final boolean hasLocale = !StrUtils.isEmpty(locale);
+        final String[] args = hasLocale ? new String[] { match, locale }
+                : new String[] { match };
+        try {
+            return rawQuery(this.getReadableDatabase(), index.getSqlSearch(hasLocale, limit),
+                    args);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Cannot search in " + index.getName(), e);
+            return null;
+        }
+    }
 
-        // Build selection
-        String sel = selection;
-        if (hasLocale) {
-            sel = StrUtils.isEmpty(sel) ? "" : (sel + " and ");
-            sel += SQLiteScheme.LocaleTable.COLUMN_LOCALE + " = ? ";
+    /**
+     * Full-text search via specified {@code index}.
+     * @return The ids of matched rows ordered by rank, never null.
+     * @see #getSearchCursor(SQLiteScheme.FtsIndex, String, String, int)
+     * */
+    public long[] search(SQLiteScheme.FtsIndex index, String query, String locale,
+            int limit) {
+        final Cursor cursor = getSearchCursor(index, query, locale, limit);
+        if (cursor == null) return new long[0];
+        try {
+            final int col = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+            final long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < ids.length) ids[i++] = cursor.getLong(col);
+            return ids;
+        } finally {
+            cursor.close();
         }
+    }
 
-        // Build selection arguments
-        String[] args = null;
-        if (hasLocale) {
-            if (selectionArgs != null) {
-                args = Arrays.copyOf(selectionArgs, selectionArgs.length + 1);
-                args[args.length -1 ] = locale;
-            } else {
-                args = new String[] { locale };
+    /**
+     * Returns readable cursor with all columns of rows within specified bounding box,
+     * ordered by approximate distance to specified {@code point}. If the longitude of
+     * {@code southWest} is greater than the longitude of {@code northEast}, the box crosses
+     * the antimeridian.
+     * @param index The spatial index.
+     * @param southWest The south-west corner of the bounding box.
+     * @param northEast The north-east corner of the bounding box.
+     * @param point The point to order rows by distance, or null for the box center.
+     * @param locale The locale of rows, or null for all rows.
+     * @param limit The max number of rows, or 0 for no limit.
+     * @return The readable cursor, or null.
+     * */
+    public Cursor getBoundsCursor(SQLiteScheme.SpatialIndex index, LatLon southWest,
+            LatLon northEast, LatLon point, String locale, int limit) {
+        if (index == null || southWest == null || northEast == null) return null;
+        final double west = southWest.getLongitude(), east = northEast.getLongitude();
+        final boolean wraps = west > east;
+        if (point == null || !point.isValid()) {
+            double lon = (west + east + (wraps ? 360 : 0)) / 2;
+            if (lon > 180) lon -= 360;
+            point = new LatLon((southWest.getLatitude() + northEast.getLatitude()) / 2, lon);
+        }
+        final String[] bounds = new String[SPATIAL_BOUNDS_SIZE];
+        bounds[0] = String.valueOf(northEast.getLatitude());
+        bounds[1] = String.valueOf(southWest.getLatitude());
+        setSpatialRanges(bounds, west, wraps ? 180 : east, wraps ? -180 : 181,
+                wraps ? east : -181);
+        return getSpatialCursor(index, bounds, point, locale, limit);
+    }
+
+    /**
+     * Returns readable cursor with all columns of {@code count} rows nearest to specified
+     * {@code point}, ordered by approximate distance.
+     * @param index The spatial index.
+     * @param point The point to search nearest rows.
+     * @param count The number of rows to return.
+     * @param locale The locale of rows, or null for all rows.
+     * @return The readable cursor, or null.
+     * */
+    public Cursor getNearestCursor(SQLiteScheme.SpatialIndex index, LatLon point, int count,
+            String locale) {
+        if (index == null || point == null || !point.isValid() || count <= 0) return null;
+        final boolean hasLocale = !StrUtils.isEmpty(locale);
+        double radius = NEAREST_START_RADIUS;
+        try {
+            // Grow the search radius until the box contains enough rows
+            final SQLiteDatabase db = this.getReadableDatabase();
+            final String sql = index.getSqlCount(hasLocale);
+            while (radius < NEAREST_MAX_RADIUS) {
+                final String[] args = getSpatialBounds(point, radius,
+                        SPATIAL_BOUNDS_SIZE + (hasLocale ? 1 : 0));
+                if (hasLocale) args[SPATIAL_BOUNDS_SIZE] = locale;
+                if (DatabaseUtils.longForQuery(db, sql, args) >= count) break;
+                radius *= 4;
             }
-        } else {
-            args = selectionArgs;
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Cannot query " + index.getName(), e);
+            return null;
         }
+        // The nearest rows are within the box circumscribed around the circle
+        // which contains the box with enough rows
+        return getSpatialCursor(index, getSpatialBounds(point, radius * Math.sqrt(2),
+                SPATIAL_BOUNDS_SIZE), point, locale, count);
+    }
 
-        // Receive cursor
+    /**
+     * Returns readable cursor for spatial query.
+     * @see SQLiteScheme.SpatialIndex#getSqlQuery(boolean, int)
+     * */
+    private Cursor getSpatialCursor(SQLiteScheme.SpatialIndex index, String[] bounds,
+            LatLon point, String locale, int limit) {
+        final boolean hasLocale = !StrUtils.isEmpty(locale);
+        final double cos = Math.cos(Math.toRadians(point.getLatitude()));
+        final String[] args = Arrays.copyOf(bounds, SPATIAL_BOUNDS_SIZE + (hasLocale ? 4 : 3));
+        int i = SPATIAL_BOUNDS_SIZE;
+        if (hasLocale) args[i++] = locale;
+        args[i++] = String.valueOf(point.getLatitude());
+        args[i++] = String.valueOf(point.getLongitude());
+        args[i] = String.valueOf(cos * cos);
         try {
-            return this.getReadableDatabase().query(table, columns, sel, args,
-                    groupBy, having, orderBy);
+            return rawQuery(this.getReadableDatabase(), index.getSqlQuery(hasLocale, limit),
+                    args);
         } catch (SQLiteException e) {
+            Log.w(TAG, "Cannot query " + index.getName(), e);
             return null;
         }
     }
 
+    /**
+     * Returns the bounds of a box around specified {@code point} with specified
+     * {@code radius}, in meters, as array of query arguments, see
+     * {@link SQLiteScheme.SpatialIndex#getSqlQuery(boolean, int)}. The part of the box
+     * beyond the antimeridian goes to the second range of longitude.
+     * @param size The size of array to return, at least {@link #SPATIAL_BOUNDS_SIZE}.
+     * */
+    private static String[] getSpatialBounds(LatLon point, double radius, int size) {
+        final double dLat = Math.toDegrees(radius / LatLon.EARTH_RADIUS);
+        final double cos = Math.cos(Math.toRadians(point.getLatitude()));
+        final double dLon = cos > dLat / 180 ? Math.min(dLat / cos, 180) : 180;
+        final String[] bounds = new String[size];
+        bounds[0] = String.valueOf(Math.min(point.getLatitude() + dLat, 90));
+        bounds[1] = String.valueOf(Math.max(point.getLatitude() - dLat, -90));
+        final double west = point.getLongitude() - dLon, east = point.getLongitude() + dLon;
+        if (dLon >= 180) {
+            setSpatialRanges(bounds, -180, 180, 181, -181);
+        } else if (east > 180) {
+            setSpatialRanges(bounds, west, 180, -180, east - 360);
+        } else if (west < -180) {
+            setSpatialRanges(bounds, -180, east, west + 360, 180);
+        } else {
+            setSpatialRanges(bounds, west, east, 181, -181);
+        }
+        return bounds;
+    }
+
+    /**
+     * Sets two ranges of longitude to specified spatial query arguments. The empty range
+     * is {@code [181, -181]}.
+     * */
+    private static void setSpatialRanges(String[] bounds, double west1, double east1,
+            double west2, double east2) {
+        bounds[2] = String.valueOf(east1);
+        bounds[3] = String.valueOf(west1);
+        bounds[4] = String.valueOf(east2);
+        bounds[5] = String.valueOf(west2);
+    }
+
     /**
      * Get writable cursor for a table.
      * @param table The name of table.
      * @return Writable Cursor for this table.
      * */
     public Cursor getWritableCursor(String table) {
-        return this.getWritableDatabase().query(table,null, null, null, null,
-                null, null);
+        return track(this.getWritableDatabase().query(table,null, null, null, null,
+                null, null));
     }
 
     /**
@@ -169,13 +1053,25 @@ public abstract class DBSQLite extends SQLiteOpenHelper {
      * Attaches the database with given {@code name} and {@code path}.
      * */
     public static boolean attachDatabase(SQLiteDatabase db, String name, String path) {
-        return execSQL(db, "ATTACH '" + path + "' AS " + name);
+        if (db == null || path == null) return false;
+        try {
+            AttachRegistry.checkSchema(name);
+            db.execSQL("ATTACH DATABASE ? AS " + name, new Object[] { path });
+        } catch (IllegalArgumentException | SQLException e) {
+            return false;
+        }
+        return true;
     }
 
     /**
      * Detaches the database with specified {@code name}.
      * */
     public static boolean detachDatabase(SQLiteDatabase db, String name) {
+        try {
+            AttachRegistry.checkSchema(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
         return execSQL(db, "DETACH DATABASE " + name);
     }
 
@@ -197,13 +1093,85 @@ public abstract class DBSQLite extends SQLiteOpenHelper {
         return DBSQLite.execSQL(db, "DROP VIEW IF EXISTS " + table);
     }
 
+    /**
+     * Execute a sequence of SQL statements in one transaction.
+     * @return True, if all statements have been executed, otherwise false (and nothing
+     * is changed).
+     * @see #execSQL(SQLiteDatabase, String)
+     * */
+    public static boolean execSQL(SQLiteDatabase db, String[] sql) {
+        if (db == null || sql == null) return false;
+        db.beginTransaction();
+        try {
+            for (String s : sql) {
+                if (!execSQL(db, s)) return false;
+            }
+            db.setTransactionSuccessful();
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Creates the table with its indexes, declared by {@link Column} annotations, in one
+     * transaction.
+     * @see TableSchema
+     * */
+    public static boolean createTable(SQLiteDatabase db, TableSchema schema) {
+        return schema != null && execSQL(db, schema.getSql());
+    }
+
+    /**
+     * Creates full-text search index with its triggers and fills it from the content table.
+     * @see SQLiteScheme.FtsIndex
+     * */
+    public static boolean createFtsIndex(SQLiteDatabase db, SQLiteScheme.FtsIndex index) {
+        if (index == null) return false;
+        final String[] create = index.getSqlCreate();
+        final String[] sql = Arrays.copyOf(create, create.length + 1);
+        sql[create.length] = index.getSqlRebuild();
+        return execSQL(db, sql);
+    }
+
+    /**
+     * Drops full-text search index with its triggers.
+     * @see SQLiteScheme.FtsIndex
+     * */
+    public static boolean dropFtsIndex(SQLiteDatabase db, SQLiteScheme.FtsIndex index) {
+        return index != null && execSQL(db, index.getSqlDrop());
+    }
+
+    /**
+     * Creates spatial index with its triggers and fills it from the content table.
+     * @see SQLiteScheme.SpatialIndex
+     * */
+    public static boolean createSpatialIndex(SQLiteDatabase db,
+            SQLiteScheme.SpatialIndex index) {
+        if (index == null) return false;
+        final String[] create = index.getSqlCreate();
+        final String[] rebuild = index.getSqlRebuild();
+        final String[] sql = Arrays.copyOf(create, create.length + rebuild.length);
+        System.arraycopy(rebuild, 0, sql, create.length, rebuild.length);
+        return execSQL(db, sql);
+    }
+
+    /**
+     * Drops spatial index with its triggers.
+     * @see SQLiteScheme.SpatialIndex
+     * */
+    public static boolean dropSpatialIndex(SQLiteDatabase db,
+            SQLiteScheme.SpatialIndex index) {
+        return index != null && execSQL(db, index.getSqlDrop());
+    }
+
     /**
      * Execute SQL query for removing all data from specified table.
      * @param db The data base.
      * @param table The name of table.
      * */
     public static boolean clearTable(SQLiteDatabase db, String table) {
-        return DBSQLite.execSQL(db, "" + table);
+        return DBSQLite.execSQL(db, "DELETE FROM " + table);
     }
 
 }
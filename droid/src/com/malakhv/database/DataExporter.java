@@ -0,0 +1,479 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.util.Base64;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class exports tables (or any cursors) of a database as JSON lines or CSV data. The rows
+ * are written directly from the cursor to the stream, one by one, without loading them to
+ * memory, so the memory usage does not depend on the table size. When a table with
+ * {@link BaseColumns#_ID} column is exported, the blobs larger than
+ * {@link #BLOB_INLINE_SIZE} are not read to the cursor, they are streamed by chunks via
+ * {@link DBSQLite#openBlob(String, String, long)}.
+ * <p>The JSON lines format has one JSON object per row, with column names as keys. The
+ * CSV format (RFC 4180) has a header with the column names, null values are written as
+ * empty unquoted fields and empty strings as {@code ""}, so the data can be imported back
+ * by {@link DataImporter}. In both formats, the blobs are written as Base64 strings; in
+ * CSV, they are imported back as blobs only into columns declared as BLOB, in other
+ * columns they stay Base64 strings.</p>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DataExporter {
+
+    /** The JSON lines format, one JSON object per row. */
+    public static final int FORMAT_JSON = 0;
+
+    /** The CSV format, with header. */
+    public static final int FORMAT_CSV = 1;
+
+    /** The output without compression. */
+    public static final int COMPRESSION_NONE = 0;
+
+    /** The gzip compressed output. */
+    public static final int COMPRESSION_GZIP = 1;
+
+    /** The zip archive output, with one entry per table. */
+    public static final int COMPRESSION_ZIP = 2;
+
+    /** The extension of JSON lines files. */
+    public static final String EXT_JSON = ".jsonl";
+
+    /** The default number of rows between progress notifications. */
+    public static final int DEFAULT_PROGRESS_STEP = 1000;
+
+    /** The max size of blobs which are read to the cursor, in bytes. */
+    public static final int BLOB_INLINE_SIZE = 64 * 1024;
+
+    /** The size of the write buffer, in chars. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** The size of the buffer to encode streamed blobs, it's a multiple of 3 bytes. */
+    private static final int BLOB_BUFFER_SIZE = 3 * 16 * 1024;
+
+    /** The hex digits to escape control chars in JSON. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** The Unicode line and paragraph separators, they are escaped in JSON strings. */
+    private static final char LINE_SEPARATOR = 0x2028, PARAGRAPH_SEPARATOR = 0x2029;
+
+    /**
+     * The listener of export progress.
+     * */
+    public interface Listener {
+        /**
+         * Called periodically during export, and after each exported entry.
+         * @param entry The name of exported entry (or table).
+         * @param count The number of exported rows in this entry.
+         * */
+        void onProgress(String entry, long count);
+    }
+
+    /** The source database. */
+    private final DBSQLite mDB;
+
+    /** The output format. */
+    private int mFormat = FORMAT_JSON;
+
+    /** The output compression. */
+    private int mCompression = COMPRESSION_NONE;
+
+    /** The delimiter of CSV fields. */
+    private char mDelimiter = ',';
+
+    /** The number of rows between progress notifications. */
+    private int mProgressStep = DEFAULT_PROGRESS_STEP;
+
+    /** The listener of export progress, or null. */
+    private Listener mListener = null;
+
+    /**
+     * Construct a new {@link DataExporter} instance for specified database.
+     * */
+    public DataExporter(DBSQLite db) {
+        mDB = db;
+    }
+
+    /**
+     * Sets the output format, {@link #FORMAT_JSON} or {@link #FORMAT_CSV}.
+     * */
+    public DataExporter setFormat(int format) {
+        mFormat = format == FORMAT_CSV ? FORMAT_CSV : FORMAT_JSON;
+        return this;
+    }
+
+    /**
+     * Sets the output compression, {@link #COMPRESSION_NONE}, {@link #COMPRESSION_GZIP} or
+     * {@link #COMPRESSION_ZIP}.
+     * */
+    public DataExporter setCompression(int compression) {
+        mCompression = compression == COMPRESSION_GZIP || compression == COMPRESSION_ZIP
+                ? compression : COMPRESSION_NONE;
+        return this;
+    }
+
+    /**
+     * Sets the delimiter of CSV fields, by default it's comma.
+     * */
+    public DataExporter setDelimiter(char delimiter) {
+        mDelimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Sets the number of rows between progress notifications.
+     * */
+    public DataExporter setProgressStep(int step) {
+        mProgressStep = step > 0 ? step : DEFAULT_PROGRESS_STEP;
+        return this;
+    }
+
+    /**
+     * Sets the listener of export progress.
+     * */
+    public DataExporter setListener(Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * @return The file extension of exported entries in current format.
+     * */
+    public String getExtension() {
+        return mFormat == FORMAT_CSV ? DataImporter.EXT_CSV : EXT_JSON;
+    }
+
+    /**
+     * Exports specified tables to specified stream. With {@link #COMPRESSION_ZIP}, each table
+     * is written to its own zip entry, otherwise the tables are written one after another.
+     * The stream will not be closed.
+     * @return The number of exported rows.
+     * @throws android.database.SQLException If a table cannot be read.
+     * */
+    public long exportTables(OutputStream out, String... tables) throws IOException {
+        if (tables == null || tables.length == 0) return 0;
+        final Output output = new Output(out);
+        long count = 0;
+        for (String table : tables) {
+            try (Cursor cursor = mDB.getReadableCursorOrThrow(table, getProjection(table), null,
+                    null, null, null, null, null)) {
+                count += output.write(cursor, table, table);
+            }
+        }
+        output.finish();
+        return count;
+    }
+
+    /**
+     * Exports the rows of specified table to specified stream. The stream will not be
+     * closed.
+     * @param selection The filter declaring which rows to export, or null to export all rows.
+     * @param selectionArgs The arguments of {@code selection}.
+     * @return The number of exported rows.
+     * @throws android.database.SQLException If the table cannot be read.
+     * */
+    public long exportTable(OutputStream out, String table, String selection,
+            String[] selectionArgs) throws IOException {
+        try (Cursor cursor = mDB.getReadableCursorOrThrow(table, getProjection(table), null,
+                selection, selectionArgs, null, null, null)) {
+            final Output output = new Output(out);
+            final long count = output.write(cursor, table, table);
+            output.finish();
+            return count;
+        }
+    }
+
+    /**
+     * Exports all rows of specified cursor to specified stream. Neither the cursor nor the
+     * stream will be closed.
+     * @param name The name of the data, it is used as zip entry name (with extension).
+     * @return The number of exported rows.
+     * */
+    public long exportCursor(OutputStream out, Cursor cursor, String name) throws IOException {
+        final Output output = new Output(out);
+        final long count = output.write(cursor, name, null);
+        output.finish();
+        return count;
+    }
+
+    /**
+     * Returns the columns to query specified table: the large blobs are replaced by empty
+     * ones, to stream them later by {@link #writeBlob(Writer, Cursor, int, String, int)}.
+     * @return The columns, or null to query all columns, if the table has no
+     * {@link BaseColumns#_ID} column.
+     * */
+    private String[] getProjection(String table) {
+        final String[] columns = mDB.getColumns(table);
+        boolean hasId = false;
+        for (String column : columns) hasId |= BaseColumns._ID.equalsIgnoreCase(column);
+        if (!hasId) return null;
+        for (int i = 0; i < columns.length; i++) {
+            final String name = "\"" + columns[i].replace("\"", "\"\"") + "\"";
+            columns[i] = "CASE WHEN typeof(" + name + ") = 'blob' AND length(" + name + ") > "
+                    + BLOB_INLINE_SIZE + " THEN X'' ELSE " + name + " END AS " + name;
+        }
+        return columns;
+    }
+
+    /**
+     * Writes the header (for CSV format) before the rows of cursor.
+     * */
+    private void writeHeader(Writer writer, String[] columns) throws IOException {
+        if (mFormat != FORMAT_CSV) return;
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) writer.write(mDelimiter);
+            writeCsvString(writer, columns[i]);
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Writes the current row of cursor.
+     * */
+    private void writeRow(Writer writer, Cursor cursor, String[] columns, String table,
+            int idColumn) throws IOException {
+        if (mFormat == FORMAT_CSV) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) writer.write(mDelimiter);
+                writeCsvValue(writer, cursor, i, table, idColumn);
+            }
+            writer.write("\r\n");
+        } else {
+            writer.write('{');
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) writer.write(',');
+                writeJsonString(writer, columns[i]);
+                writer.write(':');
+                writeJsonValue(writer, cursor, i, table, idColumn);
+            }
+            writer.write("}\n");
+        }
+    }
+
+    /**
+     * Writes the value of specified column as CSV field.
+     * */
+    private void writeCsvValue(Writer writer, Cursor cursor, int column, String table,
+            int idColumn) throws IOException {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL: break;
+            case Cursor.FIELD_TYPE_INTEGER: writer.write(Long.toString(cursor.getLong(column)));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT: writer.write(Double.toString(cursor.getDouble(column)));
+                break;
+            case Cursor.FIELD_TYPE_BLOB: writeBlob(writer, cursor, column, table, idColumn);
+                break;
+            default: writeCsvString(writer, cursor.getString(column));
+        }
+    }
+
+    /**
+     * Writes specified string as CSV field, quoted if needed.
+     * */
+    private void writeCsvString(Writer writer, String value) throws IOException {
+        final int length = value.length();
+        boolean quote = length == 0;
+        for (int i = 0; i < length && !quote; i++) {
+            final char c = value.charAt(i);
+            quote = c == '"' || c == '\n' || c == '\r' || c == mDelimiter;
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) == '"') {
+                writer.write(value, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    /**
+     * Writes the value of specified column as JSON value.
+     * */
+    private void writeJsonValue(Writer writer, Cursor cursor, int column, String table,
+            int idColumn) throws IOException {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL: writer.write("null"); break;
+            case Cursor.FIELD_TYPE_INTEGER: writer.write(Long.toString(cursor.getLong(column)));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                final double value = cursor.getDouble(column);
+                writer.write(Double.isNaN(value) || Double.isInfinite(value) ? "null"
+                        : Double.toString(value));
+                break;
+            case Cursor.FIELD_TYPE_BLOB: writeBlob(writer, cursor, column, table, idColumn);
+                break;
+            default: writeJsonString(writer, cursor.getString(column));
+        }
+    }
+
+    /**
+     * Writes the blob value of specified column as quoted Base64 string (it's the same in
+     * CSV and JSON, and the quotes keep empty blobs from being read as null). The empty
+     * blobs of a table export may stand for large ones (see {@link #getProjection(String)}),
+     * so they are streamed from the table.
+     * @param table The exported table, or null, if the cursor is not a table export.
+     * @param idColumn The index of {@link BaseColumns#_ID} column, or -1.
+     * */
+    private void writeBlob(Writer writer, Cursor cursor, int column, String table,
+            int idColumn) throws IOException {
+        final byte[] value = cursor.getBlob(column);
+        writer.write('"');
+        if (value.length > 0 || table == null || idColumn < 0) {
+            writer.write(Base64.encodeToString(value, Base64.NO_WRAP));
+        } else {
+            try (InputStream in = mDB.openBlob(table, cursor.getColumnName(column),
+                    cursor.getLong(idColumn))) {
+                // Each chunk is a multiple of 3 bytes, so its Base64 has no padding
+                final byte[] buffer = new byte[BLOB_BUFFER_SIZE];
+                int count;
+                while ((count = readFully(in, buffer)) > 0) {
+                    writer.write(Base64.encodeToString(buffer, 0, count, Base64.NO_WRAP));
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Reads bytes from specified stream until the buffer is full, or the stream ends.
+     * @return The number of read bytes.
+     * */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int count = 0;
+        while (count < buffer.length) {
+            final int read = in.read(buffer, count, buffer.length - count);
+            if (read < 0) break;
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Writes specified string as JSON string, with escaping.
+     * */
+    private static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != LINE_SEPARATOR
+                    && c != PARAGRAPH_SEPARATOR) continue;
+            writer.write(value, start, i - start);
+            start = i + 1;
+            switch (c) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    writer.write("\\u");
+                    writer.write(HEX[(c >> 12) & 0xF]); writer.write(HEX[(c >> 8) & 0xF]);
+                    writer.write(HEX[(c >> 4) & 0xF]); writer.write(HEX[c & 0xF]);
+            }
+        }
+        writer.write(value, start, length - start);
+        writer.write('"');
+    }
+
+    /**
+     * The output of one export operation, it wraps the target stream with compression.
+     * */
+    private final class Output {
+
+        /** The compressed stream, or null. */
+        private final GZIPOutputStream mGzip;
+
+        /** The zip stream, or null. */
+        private final ZipOutputStream mZip;
+
+        /** The writer of text data. */
+        private final Writer mWriter;
+
+        /**
+         * Construct a new {@link Output} instance for specified stream.
+         * */
+        Output(OutputStream out) throws IOException {
+            mGzip = mCompression == COMPRESSION_GZIP ? new GZIPOutputStream(out) : null;
+            mZip = mCompression == COMPRESSION_ZIP ? new ZipOutputStream(out) : null;
+            final OutputStream target = mGzip != null ? mGzip : mZip != null ? mZip : out;
+            mWriter = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8),
+                    BUFFER_SIZE);
+        }
+
+        /**
+         * Writes all rows of specified cursor.
+         * @param table The exported table, or null, if the cursor is not a table export.
+         * @return The number of written rows.
+         * */
+        long write(Cursor cursor, String name, String table) throws IOException {
+            if (cursor == null) return 0;
+            if (mZip != null) mZip.putNextEntry(new ZipEntry(name + getExtension()));
+            final String[] columns = cursor.getColumnNames();
+            final int idColumn = table != null ? cursor.getColumnIndex(BaseColumns._ID) : -1;
+            writeHeader(mWriter, columns);
+            long count = 0;
+            if (cursor.moveToFirst()) {
+                do {
+                    writeRow(mWriter, cursor, columns, table, idColumn);
+                    count++;
+                    if (mListener != null && count % mProgressStep == 0) {
+                        mListener.onProgress(name, count);
+                    }
+                } while (cursor.moveToNext());
+            }
+            mWriter.flush();
+            if (mZip != null) mZip.closeEntry();
+            if (mListener != null) mListener.onProgress(name, count);
+            return count;
+        }
+
+        /**
+         * Completes compressed data, without closing the target stream.
+         * */
+        void finish() throws IOException {
+            mWriter.flush();
+            if (mGzip != null) mGzip.finish();
+            if (mZip != null) mZip.finish();
+        }
+    }
+}
@@ -0,0 +1,489 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Base64;
+
+import com.malakhv.util.StrUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Class imports data sets (CSV files and SQL dumps) to a database. The data is read
+ * incrementally, directly from the stream (for example, from zip archive entry, without
+ * unpacking it to disk), and it is inserted in batches, each batch in its own transaction.
+ * So, if something went wrong, all completed batches stay in database.
+ * <p>The CSV file should have a header with the column names, and its content is
+ * inserted into the table with the file name (without extension). The values of columns
+ * declared as BLOB are decoded from Base64, as {@link DataExporter} writes them. The SQL
+ * dump can contain any statements, except transaction control ones, which are
+ * skipped.</p>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class DataImporter {
+
+    /** The default number of rows (or statements) in one transaction. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** The extension of CSV files. */
+    public static final String EXT_CSV = ".csv";
+
+    /** The extension of SQL dumps. */
+    public static final String EXT_SQL = ".sql";
+
+    /** The size of the read buffer, in chars. */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /** The pattern of transaction control statements in SQL dumps. */
+    private static final Pattern TRANSACTION_PATTERN = Pattern.compile(
+            "^\\s*(BEGIN|COMMIT|END|ROLLBACK|SAVEPOINT|RELEASE)\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /** The pattern of trigger creation statements in SQL dumps. */
+    private static final Pattern TRIGGER_PATTERN = Pattern.compile(
+            "^\\s*CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * The listener of import progress.
+     * */
+    public interface Listener {
+        /**
+         * Called after each batch.
+         * @param entry The name of imported entry (or table).
+         * @param count The number of imported rows (or statements) in this entry.
+         * */
+        void onProgress(String entry, long count);
+    }
+
+    /** The target database. */
+    private final DBSQLite mDB;
+
+    /** The number of rows (or statements) in one transaction. */
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    /** The delimiter of CSV fields. */
+    private char mDelimiter = ',';
+
+    /** The listener of import progress, or null. */
+    private Listener mListener = null;
+
+    /**
+     * Construct a new {@link DataImporter} instance for specified database.
+     * */
+    public DataImporter(DBSQLite db) {
+        mDB = db;
+    }
+
+    /**
+     * Sets the number of rows (or statements) in one transaction.
+     * */
+    public DataImporter setBatchSize(int size) {
+        mBatchSize = size > 0 ? size : DEFAULT_BATCH_SIZE;
+        return this;
+    }
+
+    /**
+     * Sets the delimiter of CSV fields, by default it's comma.
+     * */
+    public DataImporter setDelimiter(char delimiter) {
+        mDelimiter = delimiter;
+        return this;
+    }
+
+    /**
+     * Sets the listener of import progress.
+     * */
+    public DataImporter setListener(Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * Imports all CSV files and SQL dumps from specified zip archive.
+     * @return The number of imported rows and statements.
+     * */
+    public long importZip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return importZip(in);
+        }
+    }
+
+    /**
+     * Imports all CSV files and SQL dumps from specified zip stream. The entries are
+     * read directly from the stream, and other entries are skipped. The stream will be
+     * closed.
+     * @return The number of imported rows and statements.
+     * */
+    public long importZip(InputStream in) throws IOException {
+        long count = 0;
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                final String name = entry.getName().toLowerCase(Locale.US);
+                if (!entry.isDirectory()) {
+                    // We should not close the reader, it closes the zip stream
+                    final Reader reader = new InputStreamReader(zip, StandardCharsets.UTF_8);
+                    if (name.endsWith(EXT_CSV)) {
+                        count += importCsv(reader, getTable(entry), entry.getName());
+                    } else if (name.endsWith(EXT_SQL)) {
+                        count += importSql(reader, entry.getName());
+                    }
+                }
+                zip.closeEntry();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the table to import specified CSV entry. By default, it's the file name
+     * without extension.
+     * */
+    protected String getTable(ZipEntry entry) {
+        String name = entry.getName();
+        name = name.substring(name.lastIndexOf('/') + 1);
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Imports CSV data from specified stream into specified table. The stream will not
+     * be closed.
+     * @return The number of imported rows.
+     * */
+    public long importCsv(InputStream in, String table) throws IOException {
+        return importCsv(new InputStreamReader(in, StandardCharsets.UTF_8), table, table);
+    }
+
+    /**
+     * Imports SQL dump from specified stream. The stream will not be closed.
+     * @return The number of executed statements.
+     * */
+    public long importSql(InputStream in) throws IOException {
+        return importSql(new InputStreamReader(in, StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Imports CSV data from specified reader into specified table.
+     * */
+    private long importCsv(Reader reader, String table, String entry) throws IOException {
+        final Source src = new Source(reader);
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        if (!readRecord(src, fields, field)) return 0;
+        final int columns = fields.size();
+
+        // The insert statement, the names are quoted, since they came from the data
+        final Set<String> names = new HashSet<>();
+        final Set<String> blobs = mDB.getBlobColumns(table);
+        final boolean[] isBlob = new boolean[columns];
+        final StringBuilder sql = new StringBuilder("INSERT INTO ").append(quote(table))
+                .append(" (");
+        for (int i = 0; i < columns; i++) {
+            final String name = fields.get(i);
+            if (StrUtils.isEmpty(name)) {
+                throw new IOException("Empty column name in CSV header of " + entry);
+            }
+            if (!names.add(name.toLowerCase(Locale.ROOT))) {
+                throw new IOException("Duplicate column " + name + " in CSV header of "
+                        + entry);
+            }
+            isBlob[i] = blobs.contains(name.toLowerCase(Locale.ROOT));
+            if (i > 0) sql.append(", ");
+            sql.append(quote(name));
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns; i++) sql.append(i > 0 ? ", ?" : "?");
+        sql.append(")");
+
+        final SQLiteDatabase db = mDB.getWritableDatabase();
+        long count = 0;
+        boolean hasMore = true;
+        try (SQLiteStatement statement = db.compileStatement(sql.toString())) {
+            while (hasMore) {
+                int batch = 0;
+                db.beginTransaction();
+                try {
+                    while (batch < mBatchSize && (hasMore = readRecord(src, fields, field))) {
+                        if (fields.size() == 1 && fields.get(0) == null) continue; // Blank
+                        for (int i = 0; i < columns; i++) {
+                            final String value = i < fields.size() ? fields.get(i) : null;
+                            if (value == null) {
+                                statement.bindNull(i + 1);
+                            } else if (isBlob[i]) {
+                                statement.bindBlob(i + 1, decodeBlob(value, entry));
+                            } else {
+                                statement.bindString(i + 1, value);
+                            }
+                        }
+                        statement.executeInsert();
+                        batch++;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                if (batch > 0) {
+                    count += batch;
+                    mDB.notifyTableChanged(table);
+                    if (mListener != null) mListener.onProgress(entry, count);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The value of BLOB column, which is written as Base64 string.
+     * @throws IOException If the value is not valid Base64 string.
+     * */
+    private static byte[] decodeBlob(String value, String entry) throws IOException {
+        try {
+            return Base64.decode(value, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid Base64 value in " + entry, e);
+        }
+    }
+
+    /**
+     * Imports SQL dump from specified reader.
+     * */
+    private long importSql(Reader reader, String entry) throws IOException {
+        final Source src = new Source(reader);
+        final StringBuilder sql = new StringBuilder();
+        final Set<String> tables = new HashSet<>();
+        final SQLiteDatabase db = mDB.getWritableDatabase();
+        long count = 0;
+        boolean hasMore = true;
+        while (hasMore) {
+            int batch = 0;
+            tables.clear();
+            db.beginTransaction();
+            try {
+                while (batch < mBatchSize && (hasMore = readStatement(src, sql))) {
+                    final String statement = sql.toString();
+                    if (TRANSACTION_PATTERN.matcher(statement).matches()) continue;
+                    db.execSQL(statement);
+                    final String table = TableNotifier.findTable(statement);
+                    if (table != null) tables.add(table);
+                    batch++;
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            if (batch > 0) {
+                count += batch;
+                if (!tables.isEmpty()) mDB.notifyTableChanged(tables.toArray(new String[0]));
+                if (mListener != null) mListener.onProgress(entry, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the next CSV record (RFC 4180). The empty unquoted fields are returned as null.
+     * @return False, if there are no more records.
+     * */
+    private boolean readRecord(Source src, List<String> fields, StringBuilder field)
+            throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c = src.read();
+        if (c == -1) return false;
+        boolean quoted = false, wasQuoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) throw new IOException("Unterminated quoted field in CSV data");
+                if (c == '"') {
+                    if (src.peek() == '"') {
+                        src.read(); field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = wasQuoted = true;
+            } else if (c == mDelimiter) {
+                fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r' && src.peek() == '\n') src.read();
+                fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+                return true;
+            } else {
+                field.append((char) c);
+            }
+            c = src.read();
+        }
+    }
+
+    /**
+     * Reads the next SQL statement, without comments.
+     * @return False, if there are no more statements.
+     * */
+    private static boolean readStatement(Source src, StringBuilder sql) throws IOException {
+        sql.setLength(0);
+        int c;
+        char quote = 0;
+        while ((c = src.read()) != -1) {
+            if (quote != 0) {
+                sql.append((char) c);
+                if (c == quote) quote = 0;
+                continue;
+            }
+            if (c == '-' && src.peek() == '-') {
+                while ((c = src.read()) != -1 && c != '\n') { /* Skip line comment */ }
+                sql.append('\n');
+                continue;
+            }
+            if (c == '/' && src.peek() == '*') {
+                src.read();
+                int prev = 0;
+                while ((c = src.read()) != -1 && !(prev == '*' && c == '/')) prev = c;
+                sql.append(' ');
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '`') quote = (char) c;
+            if (c == '[') quote = ']';
+            sql.append((char) c);
+            if (c == ';' && isComplete(sql)) return true;
+        }
+        // The last statement may have no semicolon
+        for (int i = 0; i < sql.length(); i++) {
+            if (!Character.isWhitespace(sql.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return True, if specified statement, which ends with semicolon, is complete. The
+     * statement is not complete, if it's a trigger and its "BEGIN" is not closed by "END"
+     * yet. The "END" of "CASE" expressions and the quoted text are taken into account.
+     * */
+    private static boolean isComplete(CharSequence sql) {
+        if (!TRIGGER_PATTERN.matcher(sql).matches()) return true;
+        final int length = sql.length();
+        int depth = 0;
+        boolean hasBody = false;
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`' || c == '[') {
+                final char quote = c == '[' ? ']' : c;
+                while (++i < length && sql.charAt(i) != quote) { /* Skip quoted text */ }
+                continue;
+            }
+            if (!Character.isLetter(c) || (i > 0 && isWordChar(sql.charAt(i - 1)))) continue;
+            int end = i;
+            while (end < length && isWordChar(sql.charAt(end))) end++;
+            final String word = sql.subSequence(i, end).toString();
+            if ("BEGIN".equalsIgnoreCase(word) || "CASE".equalsIgnoreCase(word)) {
+                depth++;
+                hasBody = true;
+            } else if ("END".equalsIgnoreCase(word)) {
+                depth--;
+            }
+            i = end - 1;
+        }
+        return hasBody && depth <= 0;
+    }
+
+    /**
+     * @return True, if specified char can be a part of SQL keyword or identifier.
+     * */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * @return The quoted SQL identifier.
+     * */
+    private static String quote(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * The buffered source of chars, with one char look-ahead.
+     * */
+    private static final class Source {
+
+        /** The underlying reader. */
+        private final Reader mReader;
+
+        /** The buffer. */
+        private final char[] mBuffer = new char[BUFFER_SIZE];
+
+        /** The position in the buffer and the number of chars in the buffer. */
+        private int mPosition = 0, mLength = 0;
+
+        /**
+         * Construct a new {@link Source} instance for specified reader.
+         * */
+        Source(Reader reader) throws IOException {
+            mReader = reader;
+            if (peek() == '\uFEFF') read(); // Skip byte order mark
+        }
+
+        /**
+         * @return The next char, or {@code -1} at the end of data.
+         * */
+        int read() throws IOException {
+            final int c = peek();
+            if (c != -1) mPosition++;
+            return c;
+        }
+
+        /**
+         * @return The next char without reading it, or {@code -1} at the end of data.
+         * */
+        int peek() throws IOException {
+            if (mPosition >= mLength) {
+                mLength = mReader.read(mBuffer, 0, mBuffer.length);
+                mPosition = 0;
+                if (mLength <= 0) {
+                    mLength = 0;
+                    return -1;
+                }
+            }
+            return mBuffer[mPosition];
+        }
+    }
+}
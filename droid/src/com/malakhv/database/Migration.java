@@ -0,0 +1,350 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+/**
+ * The database migration step to specified version. Each step has two parts:
+ * <ul>
+ *     <li>{@link #onSchema(SQLiteDatabase)} &mdash; fast schema changes, they are executed
+ *     in {@link DBSQLite#onUpgrade(SQLiteDatabase, int, int)} transaction;</li>
+ *     <li>{@link #onData(SQLiteDatabase, State)} &mdash; long data processing, it is
+ *     executed by {@link DBSQLite#runPendingMigrations(Listener)} chunk by chunk, each
+ *     chunk in its own transaction. The {@link State} of this part is stored in database,
+ *     so, if the process was killed, the processing will be resumed from the last
+ *     completed chunk.</li>
+ * </ul>
+ * @see DBSQLite#addMigration(Migration)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public abstract class Migration {
+
+    /** The table to store state of pending migrations. */
+    static final String TABLE_STATE = "_migration";
+
+    /** The columns of state table. */
+    static final String COLUMN_VERSION = "version", COLUMN_STEP = "step",
+            COLUMN_POSITION = "position", COLUMN_PROGRESS = "progress", COLUMN_TOTAL = "total";
+
+    /** The SQL expression to create state table. */
+    static final String SQL_CREATE_STATE = "CREATE TABLE IF NOT EXISTS " + TABLE_STATE + " ("
+            + COLUMN_VERSION + " INTEGER NOT NULL, "
+            + COLUMN_STEP + " INTEGER NOT NULL DEFAULT (0), "
+            + COLUMN_POSITION + " INTEGER DEFAULT (0), "
+            + COLUMN_PROGRESS + " INTEGER DEFAULT (0), "
+            + COLUMN_TOTAL + " INTEGER DEFAULT (-1), "
+            + "PRIMARY KEY (" + COLUMN_VERSION + ", " + COLUMN_STEP + ") );";
+
+    /**
+     * The listener of migration progress.
+     * @see DBSQLite#runPendingMigrations(Listener)
+     * */
+    public interface Listener {
+        /**
+         * Called after each processed chunk of data.
+         * @param version The version of the migration.
+         * @param progress The number of processed items.
+         * @param total The total number of items, or {@code -1} if unknown.
+         * */
+        void onProgress(int version, long progress, long total);
+    }
+
+    /**
+     * The state of data processing, it is stored in database after each chunk.
+     * */
+    public static final class State {
+
+        /** The position to resume processing, for example, the last processed id. */
+        private long mPosition = 0;
+
+        /** The number of processed items. */
+        private long mProgress = 0;
+
+        /** The total number of items, or {@code -1} if unknown. */
+        private long mTotal = -1;
+
+        /** @return The position to resume processing. */
+        public long getPosition() { return mPosition; }
+
+        /** Sets the position to resume processing. */
+        public void setPosition(long position) { mPosition = position; }
+
+        /** @return The number of processed items. */
+        public long getProgress() { return mProgress; }
+
+        /** Sets the number of processed items. */
+        public void setProgress(long progress) { mProgress = progress; }
+
+        /** @return The total number of items, or {@code -1} if unknown. */
+        public long getTotal() { return mTotal; }
+
+        /** Sets the total number of items. */
+        public void setTotal(long total) { mTotal = total; }
+
+        /**
+         * Loads the state of migration step to specified {@code version} from database.
+         * */
+        static State load(SQLiteDatabase db, int version, int step) {
+            final State state = new State();
+            try (Cursor c = db.query(TABLE_STATE, null, COLUMN_VERSION + " = ? AND "
+                    + COLUMN_STEP + " = ?", new String[] { String.valueOf(version),
+                    String.valueOf(step) }, null, null, null)) {
+                if (c.moveToFirst()) {
+                    state.mPosition = c.getLong(c.getColumnIndexOrThrow(COLUMN_POSITION));
+                    state.mProgress = c.getLong(c.getColumnIndexOrThrow(COLUMN_PROGRESS));
+                    state.mTotal = c.getLong(c.getColumnIndexOrThrow(COLUMN_TOTAL));
+                }
+            }
+            return state;
+        }
+
+        /**
+         * Stores the state of migration step to specified {@code version} to database, or
+         * removes it, if the migration is completed.
+         * */
+        void save(SQLiteDatabase db, int version, int step, boolean completed) {
+            if (completed) {
+                db.delete(TABLE_STATE, COLUMN_VERSION + " = ? AND " + COLUMN_STEP + " = ?",
+                        new String[] { String.valueOf(version), String.valueOf(step) });
+            } else {
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_STATE
+                        + " VALUES (?, ?, ?, ?, ?);",
+                        new Object[] { version, step, mPosition, mProgress, mTotal });
+            }
+        }
+    }
+
+    /** The target version of this migration. */
+    private final int mVersion;
+
+    /** The sequence number of this migration among the steps to the same version. */
+    private final int mStep;
+
+    /**
+     * Construct a new {@link Migration} instance with specified parameters.
+     * @param version The target database version of this migration.
+     * */
+    public Migration(int version) {
+        this(version, 0);
+    }
+
+    /**
+     * Construct a new {@link Migration} instance with specified parameters.
+     * @param version The target database version of this migration.
+     * @param step The sequence number of this migration among the steps to the same
+     *             version, the steps are applied in ascending order.
+     * */
+    public Migration(int version, int step) {
+        if (step < 0) throw new IllegalArgumentException("Negative step: " + step);
+        mVersion = version; mStep = step;
+    }
+
+    /**
+     * @return The target database version of this migration.
+     * */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * @return The sequence number of this migration among the steps to the same version.
+     * */
+    public int getStep() {
+        return mStep;
+    }
+
+    /**
+     * @return The tables, which are changed by this migration. If a migration changes the
+     * table, which has not completed data part of a previous migration, that data part is
+     * completed in {@link DBSQLite#onUpgrade(SQLiteDatabase, int, int)} before. By default,
+     * there are no tables, please, override this method for migrations with data part.
+     * */
+    public String[] getTables() {
+        return new String[0];
+    }
+
+    /**
+     * @return True, if this migration has data part.
+     * @see #onData(SQLiteDatabase, State)
+     * */
+    public boolean hasData() {
+        return false;
+    }
+
+    /**
+     * Called to make schema changes, in {@link DBSQLite#onUpgrade(SQLiteDatabase, int, int)}
+     * transaction. This method should be fast.
+     * @throws android.database.SQLException If something went wrong, the whole upgrade
+     * will be rolled back.
+     * */
+    public abstract void onSchema(SQLiteDatabase db);
+
+    /**
+     * Called to process one chunk of data, in its own transaction. The chunk should be
+     * small enough to not block database for a long time. The default implementation
+     * does nothing.
+     * @param state The state of processing, it is stored after each chunk.
+     * @return True, if all data has been processed, otherwise false.
+     * */
+    public boolean onData(SQLiteDatabase db, State state) {
+        return true;
+    }
+
+    /**
+     * The migration that recreates a table with new scheme and copies the data from the
+     * old one. The old table is renamed in {@link #onSchema(SQLiteDatabase)}, the data is
+     * copied chunk by chunk in {@link BaseColumns#_ID} order, and then the old table is
+     * dropped. The table should have {@link BaseColumns#_ID} column as
+     * {@code INTEGER PRIMARY KEY}.
+     * <p>The indexes and triggers of the table, including the triggers of
+     * {@link SQLiteScheme.FtsIndex} and {@link SQLiteScheme.SpatialIndex}, are moved to the
+     * old table by renaming and dropped with it. They should be re-created by
+     * {@link #setSqlCompleted(String...)}, for example, by {@code getSqlDrop()},
+     * {@code getSqlCreate()} and {@code getSqlRebuild()} of these indexes.</p>
+     * */
+    public static class TableCopy extends Migration {
+
+        /** The default number of rows in a chunk. */
+        public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+        /** The table to recreate. */
+        private final String mTable;
+
+        /** The SQL expression to create table with new scheme. */
+        private final String mSqlCreate;
+
+        /** The list of columns to copy. */
+        private final String mColumns;
+
+        /** The number of rows in a chunk. */
+        private final int mChunkSize;
+
+        /** The SQL expressions to execute after the data has been copied. */
+        private String[] mSqlCompleted = null;
+
+        /**
+         * Construct a new {@link TableCopy} instance with specified parameters.
+         * @param version The target database version of this migration.
+         * @param table The table to recreate.
+         * @param sqlCreate The SQL expression to create table with new scheme.
+         * @param columns The columns to copy, or null to copy all columns (the old and new
+         *                tables must have the same columns in this case).
+         * @param chunkSize The number of rows in a chunk, or 0 for default value.
+         * */
+        public TableCopy(int version, String table, String sqlCreate, String[] columns,
+                int chunkSize) {
+            this(version, 0, table, sqlCreate, columns, chunkSize);
+        }
+
+        /**
+         * Construct a new {@link TableCopy} instance with specified parameters.
+         * @param version The target database version of this migration.
+         * @param step The sequence number of this migration among the steps to the same
+         *             version.
+         * @see #TableCopy(int, String, String, String[], int)
+         * */
+        public TableCopy(int version, int step, String table, String sqlCreate,
+                String[] columns, int chunkSize) {
+            super(version, step);
+            mTable = table; mSqlCreate = sqlCreate;
+            mColumns = columns != null && columns.length > 0 ? TextUtils.join(", ", columns)
+                    : null;
+            mChunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        }
+
+        /**
+         * Sets the SQL expressions to execute in the same transaction with the last chunk,
+         * after the old table has been dropped, for example, to re-create indexes and
+         * triggers of the table.
+         * */
+        public TableCopy setSqlCompleted(String... sql) {
+            mSqlCompleted = sql != null ? sql.clone() : null;
+            return this;
+        }
+
+        /** @return The name of the old table during migration. */
+        private String getOldTable() {
+            return mTable + "_v" + getVersion() + (getStep() > 0 ? "_" + getStep() : "");
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String[] getTables() {
+            return new String[] { mTable };
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean hasData() {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onSchema(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + mTable + " RENAME TO " + getOldTable() + ";");
+            db.execSQL(mSqlCreate);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean onData(SQLiteDatabase db, State state) {
+            final String old = getOldTable();
+            if (state.getTotal() < 0) {
+                // The first chunk, the ids can be zero or negative
+                state.setTotal(DatabaseUtils.queryNumEntries(db, old));
+                state.setPosition(Long.MIN_VALUE);
+            }
+
+            // The last id in this chunk, or nothing, if this is the last chunk
+            final long from = state.getPosition();
+            String last = DatabaseUtils.stringForQuery(db, "SELECT ifnull((SELECT "
+                    + BaseColumns._ID + " FROM " + old + " WHERE " + BaseColumns._ID
+                    + " > ? ORDER BY " + BaseColumns._ID + " LIMIT 1 OFFSET "
+                    + (mChunkSize - 1) + "), '')", new String[] { String.valueOf(from) });
+            final boolean isLast = last == null || last.isEmpty();
+
+            // Copy chunk
+            final String columns = mColumns != null ? mColumns : "*";
+            final String insert = "INSERT INTO " + mTable
+                    + (mColumns != null ? " (" + mColumns + ")" : "")
+                    + " SELECT " + columns + " FROM " + old + " WHERE " + BaseColumns._ID
+                    + " > ?" + (isLast ? "" : " AND " + BaseColumns._ID + " <= ?") + ";";
+            db.execSQL(insert, isLast ? new Object[] { from }
+                    : new Object[] { from, Long.parseLong(last) });
+            if (isLast) {
+                db.execSQL("DROP TABLE IF EXISTS " + old + ";");
+                if (mSqlCompleted != null) {
+                    for (String sql : mSqlCompleted) db.execSQL(sql);
+                }
+                state.setProgress(state.getTotal());
+                return true;
+            }
+            state.setPosition(Long.parseLong(last));
+            state.setProgress(state.getProgress() + mChunkSize);
+            return false;
+        }
+    }
+}
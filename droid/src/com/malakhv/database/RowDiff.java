@@ -0,0 +1,169 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import java.util.Arrays;
+
+/**
+ * The structural difference between two states of a {@link RowList}, that was made by
+ * {@link RowList#refresh(DBSQLite, String, String, String, String[], String, int)}. It
+ * contains removed positions (in the old list), inserted positions and changed positions
+ * (both in the new list). Items that changed their order are reported as removed and
+ * inserted.
+ * <p>The easiest way to apply this diff to an adapter is {@link #dispatch(Callback)}.</p>
+ * @see RowList
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class RowDiff {
+
+    /** The diff without any changes. */
+    public static final RowDiff EMPTY = new RowDiff(new int[0], new int[0], new int[0]);
+
+    /**
+     * The callback to apply a {@link RowDiff}, for example, to an adapter.
+     * @see #dispatch(Callback)
+     * */
+    public interface Callback {
+        /** Called when an item at specified position (in the old list) was removed. */
+        void onRemoved(int position);
+        /** Called when an item was inserted at specified position (in the new list). */
+        void onInserted(int position);
+        /** Called when an item at specified position (in the new list) was changed. */
+        void onChanged(int position);
+    }
+
+    /** The removed positions in the old list, in ascending order. */
+    private final int[] mRemoved;
+
+    /** The inserted positions in the new list, in ascending order. */
+    private final int[] mInserted;
+
+    /** The changed positions in the new list, in ascending order. */
+    private final int[] mChanged;
+
+    /**
+     * Construct a new {@link RowDiff} instance with specified parameters.
+     * */
+    private RowDiff(int[] removed, int[] inserted, int[] changed) {
+        mRemoved = removed; mInserted = inserted; mChanged = changed;
+    }
+
+    /**
+     * @return True, if there are no any changes in this diff.
+     * */
+    public boolean isEmpty() {
+        return mRemoved.length == 0 && mInserted.length == 0 && mChanged.length == 0;
+    }
+
+    /**
+     * @return The removed positions in the old list, in ascending order.
+     * */
+    public int[] getRemoved() {
+        return mRemoved.clone();
+    }
+
+    /**
+     * @return The inserted positions in the new list, in ascending order.
+     * */
+    public int[] getInserted() {
+        return mInserted.clone();
+    }
+
+    /**
+     * @return The changed positions in the new list, in ascending order.
+     * */
+    public int[] getChanged() {
+        return mChanged.clone();
+    }
+
+    /**
+     * Applies this diff to specified {@code callback}. The removals go first in descending
+     * order, then the insertions in ascending order, and then the changes. So, positions are
+     * always valid at the moment of call.
+     * */
+    public void dispatch(Callback callback) {
+        if (callback == null) return;
+        for (int i = mRemoved.length - 1; i >= 0; i--) callback.onRemoved(mRemoved[i]);
+        for (int position : mInserted) callback.onInserted(position);
+        for (int position : mChanged) callback.onChanged(position);
+    }
+
+    /**
+     * Makes a diff between two lists.
+     * @param oldSize The size of the old list.
+     * @param sources The position in the old list for each item in the new list, or
+     *                {@code -1}, if item is a new one.
+     * @param changed The "changed" flag for each item in the new list.
+     * @param newSize The size of the new list.
+     * */
+    static RowDiff make(int oldSize, int[] sources, boolean[] changed, int newSize) {
+
+        // The items that keep their relative order (the longest increasing subsequence of
+        // the old positions) stay in place, others should be moved
+        final boolean[] stay = new boolean[oldSize];
+        final int[] tails = new int[newSize];
+        final int[] prev = new int[newSize];
+        int length = 0;
+        for (int i = 0; i < newSize; i++) {
+            if (sources[i] < 0) continue;
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (sources[tails[mid]] < sources[i]) lo = mid + 1; else hi = mid;
+            }
+            prev[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == length) length++;
+        }
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = prev[i]) {
+            stay[sources[i]] = true;
+        }
+
+        // Removed positions
+        int count = 0;
+        for (boolean s : stay) if (!s) count++;
+        final int[] removed = new int[count];
+        count = 0;
+        for (int i = 0; i < oldSize; i++) if (!stay[i]) removed[count++] = i;
+
+        // Inserted and changed positions
+        final int[] inserted = new int[newSize];
+        final int[] updated = new int[newSize];
+        int insertedCount = 0, changedCount = 0;
+        for (int i = 0; i < newSize; i++) {
+            if (sources[i] < 0 || !stay[sources[i]]) {
+                inserted[insertedCount++] = i;
+            } else if (changed[i]) {
+                updated[changedCount++] = i;
+            }
+        }
+
+        if (removed.length == 0 && insertedCount == 0 && changedCount == 0) return EMPTY;
+        return new RowDiff(removed, Arrays.copyOf(inserted, insertedCount),
+                Arrays.copyOf(updated, changedCount));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "RowDiff{removed=" + Arrays.toString(mRemoved) + ", inserted="
+                + Arrays.toString(mInserted) + ", changed=" + Arrays.toString(mChanged) + "}";
+    }
+}
@@ -19,10 +19,22 @@
 package com.malakhv.database;
 
 import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import com.malakhv.location.LatLon;
+import com.malakhv.util.StrUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The abstract class represents the list of rows in database table.
@@ -131,6 +143,7 @@ public abstract class RowList<E extends RowObject> implements Iterable<E> {
     /**
      * Updates this list. The child class can implements any update logic. By default
      * this method clears list.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
      * */
     public void update() {
         clear();
@@ -160,7 +173,7 @@ public abstract class RowList<E extends RowObject> implements Iterable<E> {
      * Loads data to this list from specified database.
      * */
     protected void load(DBSQLite db, String table, String locale) {
-        load(table, locale, null, null);
+        load(db, table, locale, null, null);
     }
 
     /**
@@ -200,17 +213,72 @@ public abstract class RowList<E extends RowObject> implements Iterable<E> {
     protected void load(DBSQLite db, String table, String locale, String selection,
             String[] selectionArgs, String orderBy, int max) {
         if (db == null) return;
-        final Cursor cursor = db.getReadableCursor(table, null, locale, selection,
+        final String[] projection = makeProjection(db, table);
+        final Cursor cursor = db.getReadableCursor(table, projection, locale, selection,
                 selectionArgs, null, null, orderBy);
+        load(db, table, cursor, max, new RowObject.RowSource(db, table,
+                makeLoaded(projection)));
+    }
+
+    /**
+     * Loads data to this list from specified cursor of specified database.
+     * @param name The name of loaded data (table), for instrumentation.
+     * */
+    private void load(DBSQLite db, String name, Cursor cursor, int max) {
+        load(db, name, cursor, max, new RowObject.RowSource(db, name, null));
+    }
+
+    /**
+     * Loads data to this list from specified cursor of specified database.
+     * @param name The name of loaded data (table).
+     * @param source The source of rows, with the loaded columns, if the cursor contains the
+     *               projection of the table, see {@link #makeLoaded(String[])}.
+     * */
+    private void load(DBSQLite db, String name, Cursor cursor, int max,
+            RowObject.RowSource source) {
         clear();
-        if (cursor == null || !cursor.moveToFirst()) return;
-        if (max <= 0) max = Integer.MAX_VALUE;
-        do {
-            final E item = makeItem();
-            item.load(cursor);
-            if (onItemAdd(item)) mItems.add(item);
-        } while (cursor.moveToNext() && --max > 0);
-        cursor.close();
+        if (cursor == null) return;
+        final DBInstrumentation instrumentation = db.getInstrumentation();
+        final long start = instrumentation != null ? System.nanoTime() : 0;
+        try (Cursor c = cursor) {
+            if (!c.moveToFirst()) return;
+            if (max <= 0) max = Integer.MAX_VALUE;
+            final String[] columns = c.getColumnNames();
+            do {
+                final E item = makeItem();
+                if (item == null) continue;
+                item.load(c, columns, source);
+                if (onItemAdd(item)) mItems.add(item);
+            } while (c.moveToNext() && --max > 0);
+        } finally {
+            if (instrumentation != null) {
+                instrumentation.record(DBInstrumentation.EVENT_LOAD, name,
+                        System.nanoTime() - start, mItems.size());
+            }
+        }
+    }
+
+    /**
+     * Loads full-text search results to this list from specified database. The items are
+     * ordered by rank and contain {@link SQLiteScheme.FtsIndex#COLUMN_SNIPPET} column.
+     * @see DBSQLite#getSearchCursor(SQLiteScheme.FtsIndex, String, String, int)
+     * */
+    protected void search(DBSQLite db, SQLiteScheme.FtsIndex index, String query,
+            String locale, int max) {
+        if (db == null) return;
+        if (index == null) {
+            clear(); // Nothing to search, as for a missing index table
+            return;
+        }
+        load(db, index.getTable(), db.getSearchCursor(index, query, locale, max), max);
+    }
+
+    /**
+     * Loads full-text search results to this list from assigned database.
+     * @see #search(DBSQLite, SQLiteScheme.FtsIndex, String, String, int)
+     * */
+    protected void search(SQLiteScheme.FtsIndex index, String query, String locale, int max) {
+        search(mDB, index, query, locale, max);
     }
 
     /**
@@ -258,6 +326,239 @@ public abstract class RowList<E extends RowObject> implements Iterable<E> {
         load(mDB, table, locale, sel, selArgs, orderBy, max);
     }
 
+    /**
+     * Loads rows within specified bounding box to this list from specified database. The
+     * items are ordered by distance to specified {@code point}.
+     * @see DBSQLite#getBoundsCursor(SQLiteScheme.SpatialIndex, LatLon, LatLon, LatLon,
+     * String, int)
+     * @see #sortByDistance(LatLon)
+     * */
+    protected void loadBounds(DBSQLite db, SQLiteScheme.SpatialIndex index, LatLon southWest,
+            LatLon northEast, LatLon point, String locale, int max) {
+        if (db == null) return;
+        if (index == null) {
+            clear(); // Nothing to search, as for a missing index table
+            return;
+        }
+        load(db, index.getTable(), db.getBoundsCursor(index, southWest, northEast, point,
+                locale, max), max);
+        sortByDistance(point);
+    }
+
+    /**
+     * Loads {@code count} rows nearest to specified {@code point} to this list from
+     * specified database. The items are ordered by distance to the {@code point}.
+     * @see DBSQLite#getNearestCursor(SQLiteScheme.SpatialIndex, LatLon, int, String)
+     * @see #sortByDistance(LatLon)
+     * */
+    protected void loadNearest(DBSQLite db, SQLiteScheme.SpatialIndex index, LatLon point,
+            int count, String locale) {
+        if (db == null) return;
+        if (index == null) {
+            clear(); // Nothing to search, as for a missing index table
+            return;
+        }
+        load(db, index.getTable(), db.getNearestCursor(index, point, count, locale), count);
+        sortByDistance(point);
+    }
+
+    /**
+     * Sorts items in this list by distance (see {@link LatLon#getDistance(LatLon, LatLon)})
+     * from their {@link SQLiteScheme.LocationTable#COLUMN_LOCATION} to specified
+     * {@code point}. The items without location go to the end of the list.
+     * */
+    public void sortByDistance(LatLon point) {
+        if (point == null || !point.isValid() || mItems.size() < 2) return;
+        final Map<E, Double> distances = new IdentityHashMap<>(mItems.size());
+        for (E item : mItems) {
+            final LatLon location = LatLon.fromString(
+                    item.getString(SQLiteScheme.LocationTable.COLUMN_LOCATION));
+            distances.put(item, location.isValid() ? LatLon.getDistance(point, location)
+                    : Double.MAX_VALUE);
+        }
+        Collections.sort(mItems, (a, b) -> Double.compare(distances.get(a), distances.get(b)));
+    }
+
+    /**
+     * Returns the columns to load by {@code load} and {@code refresh} methods, for example,
+     * only the columns which are shown in a list. The other columns are fetched lazily, by
+     * {@link BaseColumns#_ID}, when any of them is accessed first time, see
+     * {@link RowObject#load(Cursor, DBSQLite, String)}. The {@link BaseColumns#_ID} and
+     * {@link #getMarkerColumn()} columns are always loaded. By default, all columns are
+     * loaded.
+     * */
+    protected String[] getProjection() {
+        return null;
+    }
+
+    /**
+     * Returns the blob columns, which should never be loaded by {@code load} and
+     * {@code refresh} methods, so large values don't fill cursor windows and memory. They
+     * are read by chunks via {@link RowObject#openBlob(String)}. By default, there are no
+     * such columns.
+     * */
+    protected String[] getBlobColumns() {
+        return null;
+    }
+
+    /**
+     * @return The columns to load, see {@link #getProjection()} and
+     * {@link #getBlobColumns()}, or null for all columns.
+     * */
+    private String[] makeProjection(DBSQLite db, String table) {
+        String[] projection = getProjection();
+        if (projection == null || projection.length == 0) {
+            final String[] blobs = getBlobColumns();
+            if (blobs == null || blobs.length == 0) return null;
+            final Set<String> all = new LinkedHashSet<>(Arrays.asList(db.getColumns(table)));
+            if (all.isEmpty()) return null;
+            all.removeAll(Arrays.asList(blobs));
+            projection = all.toArray(new String[0]);
+        }
+        final Set<String> columns = new LinkedHashSet<>(Arrays.asList(projection));
+        columns.add(BaseColumns._ID);
+        final String marker = getMarkerColumn();
+        if (!StrUtils.isEmpty(marker)) columns.add(marker);
+        return columns.toArray(new String[0]);
+    }
+
+    /**
+     * @return The columns which should not be fetched lazily: the loaded ones and the blob
+     * ones, or null if all columns are loaded.
+     * */
+    private Set<String> makeLoaded(String[] projection) {
+        if (projection == null) return null;
+        final Set<String> loaded = new HashSet<>(Arrays.asList(projection));
+        final String[] blobs = getBlobColumns();
+        if (blobs != null) loaded.addAll(Arrays.asList(blobs));
+        return Collections.unmodifiableSet(loaded);
+    }
+
+    /**
+     * Returns the column which value changes each time a row is modified (for example,
+     * a timestamp or version). It is used by {@code refresh} methods to detect changed rows
+     * without comparing all columns. By default, there is no such column, so all columns
+     * will be compared.
+     * */
+    protected String getMarkerColumn() {
+        return null;
+    }
+
+    /**
+     * Refreshes data in this list from specified database.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
+     * */
+    protected RowDiff refresh(DBSQLite db, String table, String locale) {
+        return refresh(db, table, locale, null, null, null, 0);
+    }
+
+    /**
+     * Refreshes data in this list from specified database.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
+     * */
+    protected RowDiff refresh(DBSQLite db, String table, String locale, String selection,
+            String[] selectionArgs, String orderBy) {
+        return refresh(db, table, locale, selection, selectionArgs, orderBy, 0);
+    }
+
+    /**
+     * Refreshes data in this list from specified database. Unlike {@code load} methods,
+     * this method doesn't rebuild the list: the items are matched with rows by
+     * {@link BaseColumns#_ID}, unchanged items are reused as is, and changed items are
+     * reloaded in place.
+     * @return The structural difference between the old and the new state of this list.
+     * If the data cannot be read, the list stays unchanged and {@link RowDiff#EMPTY} is
+     * returned.
+     * @see #getMarkerColumn()
+     * */
+    protected RowDiff refresh(DBSQLite db, String table, String locale, String selection,
+            String[] selectionArgs, String orderBy, int max) {
+        if (db == null) return RowDiff.EMPTY;
+        final String[] projection = makeProjection(db, table);
+        final RowObject.RowSource source = new RowObject.RowSource(db, table,
+                makeLoaded(projection));
+        final Cursor cursor = db.getReadableCursor(table, projection, locale, selection,
+                selectionArgs, null, null, orderBy);
+        if (cursor == null) return RowDiff.EMPTY;
+        try {
+            // The positions of current items, by id
+            final int oldSize = mItems.size();
+            final Map<Long, Integer> positions = new HashMap<>(oldSize * 2);
+            for (int i = 0; i < oldSize; i++) {
+                final E item = mItems.get(i);
+                if (item.hasId()) positions.put(item.getId(), i);
+            }
+
+            // Match rows with items
+            final int count = cursor.getCount();
+            final int idIndex = cursor.getColumnIndex(BaseColumns._ID);
+            final String marker = getMarkerColumn();
+            final String[] columns = cursor.getColumnNames();
+            final List<E> items = new ArrayList<>(count);
+            final int[] sources = new int[count];
+            final boolean[] changed = new boolean[count];
+            if (max <= 0) max = Integer.MAX_VALUE;
+            if (cursor.moveToFirst()) {
+                do {
+                    final Integer position = idIndex < 0 || cursor.isNull(idIndex) ? null
+                            : positions.remove(cursor.getLong(idIndex));
+                    E item = position != null ? mItems.get(position) : null;
+                    boolean isChanged = false;
+                    if (item == null) {
+                        item = makeItem();
+                        if (item == null) continue;
+                        item.load(cursor, columns, source);
+                        if (!onItemAdd(item)) continue;
+                    } else if (item.isChanged(cursor, marker)) {
+                        item.load(cursor, columns, source);
+                        if (!onItemAdd(item)) continue;
+                        isChanged = true;
+                    } else if (StrUtils.isEmpty(marker)) {
+                        // Only the loaded columns have been compared
+                        item.resetFetched(source);
+                    }
+                    sources[items.size()] = position != null ? position : -1;
+                    changed[items.size()] = isChanged;
+                    items.add(item);
+                } while (cursor.moveToNext() && --max > 0);
+            }
+
+            // Apply changes
+            final RowDiff diff = RowDiff.make(oldSize, sources, changed, items.size());
+            mItems.clear();
+            mItems.addAll(items);
+            return diff;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Refreshes data in this list from assigned database.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
+     * */
+    protected RowDiff refresh(String table, String locale) {
+        return refresh(mDB, table, locale);
+    }
+
+    /**
+     * Refreshes data in this list from assigned database.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
+     * */
+    protected RowDiff refresh(String table, String locale, String sel, String[] selArgs,
+            String orderBy) {
+        return refresh(mDB, table, locale, sel, selArgs, orderBy);
+    }
+
+    /**
+     * Refreshes data in this list from assigned database.
+     * @see #refresh(DBSQLite, String, String, String, String[], String, int)
+     * */
+    protected RowDiff refresh(String table, String locale, String sel, String[] selArgs,
+            String orderBy, int max) {
+        return refresh(mDB, table, locale, sel, selArgs, orderBy, max);
+    }
+
     /** {@inheritDoc} */
     @Override
     public Iterator<E> iterator() {
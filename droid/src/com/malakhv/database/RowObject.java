@@ -19,12 +19,22 @@
 package com.malakhv.database;
 
 import android.database.Cursor;
+import android.database.SQLException;
 import android.provider.BaseColumns;
 
+import com.malakhv.util.FileUtils;
 import com.malakhv.util.StrUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 /**
@@ -37,6 +47,24 @@ public class RowObject {
     /** The row's data as a map. We store all values as {@code String}. */
     private final Map<String, String> mData = new HashMap<>();
 
+    /**
+     * The database and table of this row, or null if it is unknown. It is used to fetch the
+     * columns, which have not been loaded, and to read blobs.
+     * @see #load(Cursor, DBSQLite, String)
+     * */
+    private RowSource mSource = null;
+
+    /**
+     * The columns which have been loaded (or should not be fetched), or null if there are no
+     * columns to fetch.
+     * */
+    private Set<String> mLoaded = null;
+
+    /**
+     * True, if this object has been loaded with projection (not all columns).
+     * */
+    private boolean mProjected = false;
+
     /**
      * Construct a new {@link RowObject} instance with default parameters.
      * */
@@ -62,13 +90,16 @@ public class RowObject {
      * */
     public void clear() {
         mData.clear();
+        mSource = null;
+        mLoaded = null;
+        mProjected = false;
     }
 
     /**
      * @return The column's value as {@code int}.
      * */
     public int getInt(String column, int def) {
-        final String value = mData.get(column);
+        final String value = getRaw(column);
         if (StrUtils.isEmpty(value)) return def;
         try {
             return Integer.parseInt(value);
@@ -88,7 +119,7 @@ public class RowObject {
      * @return The column's value as {@code long}.
      * */
     public long getLong(String column, long def) {
-        final String value = mData.get(column);
+        final String value = getRaw(column);
         return StrUtils.toLong(value, def);
     }
 
@@ -103,7 +134,7 @@ public class RowObject {
      * @return The column's value as {@link String}.
      * */
     public String getString(String column) {
-        return mData.get(column);
+        return getRaw(column);
     }
 
     /**
@@ -126,10 +157,94 @@ public class RowObject {
      * */
     public boolean hasData(String field) {
         if (StrUtils.isEmpty(field)) return false;
-        final String data = mData.get(field);
+        final String data = getRaw(field);
         return !StrUtils.isEmpty(data);
     }
 
+    /**
+     * @return The column's value, it is fetched from database, if this object has been
+     * loaded with projection and the column has not been loaded.
+     * @see #load(Cursor, DBSQLite, String)
+     * */
+    private String getRaw(String column) {
+        final Set<String> loaded = mLoaded;
+        if (loaded != null && column != null && !mData.containsKey(column)
+                && !loaded.contains(column)) {
+            fetch();
+        }
+        return mData.get(column);
+    }
+
+    /**
+     * Fetches all columns, which have not been loaded, from the database by row's id. The
+     * values are processed by {@link #onItemLoad(String, String)}, as during loading.
+     * */
+    private void fetch() {
+        final Set<String> loaded = mLoaded;
+        final RowSource source = mSource;
+        mLoaded = null;
+        if (loaded == null || source == null || !hasId()) return;
+        final String[] columns = source.getMissing();
+        if (columns.length == 0) return;
+        final SQLQuery query = SQLQuery.from(source.table)
+                .columns(columns)
+                .whereEquals(BaseColumns._ID, getId());
+        try (Cursor cursor = source.db.getReadableCursor(query)) {
+            if (cursor == null || !cursor.moveToFirst()) return;
+            final int col = cursor.getColumnCount();
+            for (int i = 0; i < col; i++) {
+                final String key = cursor.getColumnName(i);
+                putRaw(key, onItemLoad(key, getValue(cursor, i)));
+            }
+        }
+    }
+
+    /**
+     * @return True, if this object has been loaded with projection and it has the columns,
+     * which have not been fetched yet.
+     * */
+    public boolean isPartial() {
+        return mLoaded != null;
+    }
+
+    /**
+     * Opens the stream to read the value of specified blob column. The value is read from
+     * database by chunks, so it is never loaded to memory at once. To keep blobs out of
+     * cursor windows, they should not be loaded with other columns, see
+     * {@link RowList#getBlobColumns()}.
+     * @throws IOException If the row is not loaded from database, or it has no id.
+     * @see DBSQLite#openBlob(String, String, long)
+     * */
+    public InputStream openBlob(String column) throws IOException {
+        final RowSource source = mSource;
+        if (source == null || !hasId()) throw new IOException("The row has no database");
+        return source.db.openBlob(source.table, column, getId());
+    }
+
+    /**
+     * @return The length of specified blob column value in bytes, or -1 if the value is
+     * null or it cannot be read.
+     * @see #openBlob(String)
+     * */
+    public long getBlobLength(String column) {
+        final RowSource source = mSource;
+        if (source == null || !hasId()) return -1;
+        return source.db.getBlobLength(source.table, column, getId());
+    }
+
+    /**
+     * @return The value of specified blob column, it should be used for small values only.
+     * @throws IOException If the row is not loaded from database, or it has no id.
+     * @see #openBlob(String)
+     * */
+    public byte[] getBlob(String column) throws IOException {
+        try (InputStream in = openBlob(column)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FileUtils.copy(in, out);
+            return out.toByteArray();
+        }
+    }
+
     /**
      * Put new data to this object.
      * @return True, if data has been added, otherwise false.
@@ -170,20 +285,124 @@ public class RowObject {
      * Loads data from cursor.
      * */
     public void load(Cursor cursor) {
+        load(cursor, cursor != null ? cursor.getColumnNames() : null);
+    }
+
+    /**
+     * Loads data from cursor with specified column names, it allows to resolve the names
+     * once per cursor, not per row.
+     * @param columns The column names of the cursor, see {@link Cursor#getColumnNames()}.
+     * */
+    void load(Cursor cursor, String[] columns) {
         onPreLoad();
         int count;
-        if (cursor == null || cursor.getPosition() < 0 || (count = cursor.getCount()) <= 0
-                || cursor.getPosition() >= count) return;
-        int col = cursor.getColumnCount();
-        for (int i = 0; i < col; i++) {
-            final String key = cursor.getColumnName(i);
-            String value = cursor.getString(i);
+        if (cursor == null || columns == null || cursor.getPosition() < 0
+                || (count = cursor.getCount()) <= 0 || cursor.getPosition() >= count) return;
+        for (int i = 0; i < columns.length; i++) {
+            final String key = columns[i];
+            String value = getValue(cursor, i);
             value = onItemLoad(key, value);
             putRaw(key, value);
         }
         onPostLoad();
     }
 
+    /**
+     * Loads data from cursor, which contains only some columns of the {@code table} (the
+     * projection). The other columns are fetched from {@code db} by row's id when any of
+     * them is accessed first time. The cursor should contain {@link BaseColumns#_ID} column.
+     * @param db The database to fetch other columns, or null to not fetch them.
+     * @param table The table to fetch other columns.
+     * */
+    public void load(Cursor cursor, DBSQLite db, String table) {
+        final String[] columns = cursor != null ? cursor.getColumnNames() : null;
+        load(cursor, columns, db == null || StrUtils.isEmpty(table) ? null
+                : new RowSource(db, table, columns != null
+                        ? new HashSet<>(Arrays.asList(columns)) : null));
+    }
+
+    /**
+     * Loads data from cursor with specified column names, from specified source. The values
+     * of columns, which have been fetched before, are dropped, so they will be fetched
+     * again.
+     * @param source The source of the cursor's data, it should be shared by all rows loaded
+     *               from the same cursor, or null.
+     * @see #load(Cursor, DBSQLite, String)
+     * */
+    void load(Cursor cursor, String[] columns, RowSource source) {
+        if (source != null && source.loaded != null) resetFetched(source);
+        load(cursor, columns);
+        if (source == null || source.db == null || StrUtils.isEmpty(source.table)
+                || columns == null || !hasId()) return;
+        mSource = source;
+        if (source.loaded != null) {
+            mLoaded = source.loaded;
+            mProjected = true;
+        }
+    }
+
+    /**
+     * Drops the values of columns, which have been fetched lazily, so they will be fetched
+     * from specified source again, when any of them is accessed. It is used for unchanged
+     * rows of refreshed list, since the fetched columns are not checked for changes.
+     * */
+    void resetFetched(RowSource source) {
+        if (source == null || source.loaded == null || !mProjected) return;
+        mData.keySet().retainAll(source.loaded);
+        mSource = source;
+        mLoaded = source.loaded;
+    }
+
+    /**
+     * @return The value of specified column as {@link String}, or null if it is null or
+     * it is a blob (blobs are never stored in this object).
+     * */
+    private static String getValue(Cursor cursor, int column) {
+        try {
+            return cursor.getString(column);
+        } catch (SQLException e) {
+            return null; // Blob cannot be converted to string
+        }
+    }
+
+    /**
+     * Checks the cursor's current row against the data in this object. The values are
+     * processed by {@link #onItemLoad(String, String)} before comparison, as during loading.
+     * @param cursor The cursor, positioned to the row to check.
+     * @param marker The column which value changes each time the row is modified (for
+     *               example, a timestamp or version), or {@code null} to compare all columns.
+     * @return True, if the row has any data that differs from data in this object.
+     * */
+    protected boolean isChanged(Cursor cursor, String marker) {
+        if (cursor == null) return false;
+
+        // Fast check, just by marker
+        final int markerIndex = StrUtils.isEmpty(marker) ? -1 : cursor.getColumnIndex(marker);
+        if (markerIndex >= 0) {
+            return !isSameValue(marker, getValue(cursor, markerIndex));
+        }
+
+        // Full check, all columns
+        final int col = cursor.getColumnCount();
+        int count = 0;
+        for (int i = 0; i < col; i++) {
+            final String key = cursor.getColumnName(i);
+            if (!isSameValue(key, getValue(cursor, i))) return true;
+            if (mData.containsKey(key)) count++;
+        }
+        // The object loaded with projection can have more columns than the cursor
+        return !mProjected && count != mData.size();
+    }
+
+    /**
+     * @return True, if the raw {@code value} from database is the same as the stored one.
+     * */
+    private boolean isSameValue(String column, String value) {
+        value = onItemLoad(column, value);
+        final String stored = mData.get(column);
+        return StrUtils.isEmpty(value) ? stored == null : value.equals(stored);
+    }
+
     /**
      * Obtains data from other object.
      * */
@@ -191,6 +410,9 @@ public class RowObject {
         clear();
         if (origin == null || origin.isEmpty()) return;
         mData.putAll(origin.mData);
+        mSource = origin.mSource;
+        mLoaded = origin.mLoaded;
+        mProjected = origin.mProjected;
     }
 
     /** {@inheritDoc} */
@@ -212,4 +434,48 @@ public class RowObject {
         builder.append("}");
         return builder.toString();
     }
+
+    /**
+     * The database and table of rows, it is shared by all rows loaded from the same cursor.
+     * */
+    static final class RowSource {
+
+        /** The database. */
+        final DBSQLite db;
+
+        /** The table. */
+        final String table;
+
+        /**
+         * The columns which have been loaded (or should not be fetched), if the cursor
+         * contains only some columns of the table, or null, if it contains all columns.
+         * */
+        final Set<String> loaded;
+
+        /** The columns to fetch lazily, they are resolved once for all rows. */
+        private volatile String[] mMissing = null;
+
+        /**
+         * Construct a new {@link RowSource} instance with specified parameters.
+         * @param loaded The loaded columns, this set should not be changed later.
+         * */
+        RowSource(DBSQLite db, String table, Set<String> loaded) {
+            this.db = db; this.table = table; this.loaded = loaded;
+        }
+
+        /**
+         * @return The columns of the table, which have not been loaded.
+         * */
+        String[] getMissing() {
+            String[] missing = mMissing;
+            if (missing == null) {
+                final List<String> columns = new ArrayList<>();
+                for (String column : db.getColumns(table)) {
+                    if (loaded == null || !loaded.contains(column)) columns.add(column);
+                }
+                mMissing = missing = columns.toArray(new String[0]);
+            }
+            return missing;
+        }
+    }
 }
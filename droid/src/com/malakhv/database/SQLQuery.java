@@ -0,0 +1,277 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.malakhv.util.StrUtils;
+
+import java.util.Arrays;
+
+/**
+ * The immutable SELECT query: the SQL expression with placeholders and the array of
+ * arguments to bind. Each method returns a new query, so a query can be safely shared
+ * and extended. The values are never inserted into SQL expression, they are always bound,
+ * so the SQL expression depends on the query structure only, and it can be used as a key
+ * to cache statements or results.
+ * <pre>
+ *     SQLQuery query = SQLQuery.from("places").where("rating &gt; ?", "3")
+ *             .whereEquals("locale", "en").orderBy("name").limit(10);
+ *     Cursor cursor = query.query(db);
+ * </pre>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class SQLQuery {
+
+    /** The empty array of arguments. */
+    private static final String[] NO_ARGS = new String[0];
+
+    /** The table (or any other source, for example, join or subquery). */
+    private final String mTable;
+
+    /** The result columns, or null for all columns. */
+    private final String[] mColumns;
+
+    /** True, if duplicate rows should be removed. */
+    private final boolean mDistinct;
+
+    /** The WHERE clause, without WHERE keyword, or null. */
+    private final String mWhere;
+
+    /** The arguments of WHERE clause. */
+    private final String[] mWhereArgs;
+
+    /** The GROUP BY clause, or null. */
+    private final String mGroupBy;
+
+    /** The HAVING clause, or null. */
+    private final String mHaving;
+
+    /** The ORDER BY clause, or null. */
+    private final String mOrderBy;
+
+    /** The max number of rows, or 0 for no limit. */
+    private final int mLimit;
+
+    /** The number of rows to skip. */
+    private final int mOffset;
+
+    /** The canonical SQL expression, it is built lazily. */
+    private String mSql = null;
+
+    /**
+     * Construct a new {@link SQLQuery} instance with specified parameters.
+     * */
+    private SQLQuery(String table, String[] columns, boolean distinct, String where,
+            String[] whereArgs, String groupBy, String having, String orderBy, int limit,
+            int offset) {
+        mTable = table; mColumns = columns; mDistinct = distinct;
+        mWhere = where; mWhereArgs = whereArgs;
+        mGroupBy = groupBy; mHaving = having; mOrderBy = orderBy;
+        mLimit = limit; mOffset = offset;
+    }
+
+    /**
+     * @return The new query for all rows of specified {@code table}.
+     * @throws IllegalArgumentException If the table is empty.
+     * */
+    public static SQLQuery from(String table) {
+        if (StrUtils.isEmpty(table)) throw new IllegalArgumentException("The table is empty");
+        return new SQLQuery(table.trim(), null, false, null, NO_ARGS, null, null, null, 0, 0);
+    }
+
+    /**
+     * @return The copy of this query with specified result columns, or all columns, if
+     * {@code columns} is null or empty.
+     * */
+    public SQLQuery columns(String... columns) {
+        final String[] copy = columns != null && columns.length > 0 ? columns.clone() : null;
+        return new SQLQuery(mTable, copy, mDistinct, mWhere, mWhereArgs, mGroupBy, mHaving,
+                mOrderBy, mLimit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query which removes duplicate rows, or not.
+     * */
+    public SQLQuery distinct(boolean distinct) {
+        return new SQLQuery(mTable, mColumns, distinct, mWhere, mWhereArgs, mGroupBy, mHaving,
+                mOrderBy, mLimit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query with additional condition, it is combined with
+     * existing conditions by AND operator. If {@code selection} is empty, this query.
+     * @param selection The condition with {@code ?} placeholders.
+     * @param args The values of placeholders.
+     * */
+    public SQLQuery where(String selection, String... args) {
+        if (StrUtils.isEmpty(selection)) return this;
+        final String condition = "(" + selection.trim() + ")";
+        final String where = mWhere == null ? condition : mWhere + " AND " + condition;
+        String[] whereArgs = mWhereArgs;
+        if (args != null && args.length > 0) {
+            whereArgs = Arrays.copyOf(mWhereArgs, mWhereArgs.length + args.length);
+            System.arraycopy(args, 0, whereArgs, mWhereArgs.length, args.length);
+        }
+        return new SQLQuery(mTable, mColumns, mDistinct, where, whereArgs, mGroupBy, mHaving,
+                mOrderBy, mLimit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query with additional {@code column = ?} condition, or
+     * {@code column IS NULL} condition, if {@code value} is null.
+     * */
+    public SQLQuery whereEquals(String column, Object value) {
+        return value == null ? where(column + " IS NULL")
+                : where(column + " = ?", String.valueOf(value));
+    }
+
+    /**
+     * @return The copy of this query with additional {@code column IN (?, ...)} condition.
+     * If there are no values, the query returns no rows.
+     * */
+    public SQLQuery whereIn(String column, Object... values) {
+        if (values == null || values.length == 0) return where("0");
+        final StringBuilder sql = new StringBuilder(column).append(" IN (");
+        final String[] args = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+            args[i] = String.valueOf(values[i]);
+        }
+        return where(sql.append(")").toString(), args);
+    }
+
+    /**
+     * @return The copy of this query with specified GROUP BY and HAVING clauses.
+     * */
+    public SQLQuery groupBy(String groupBy, String having) {
+        return new SQLQuery(mTable, mColumns, mDistinct, mWhere, mWhereArgs, trim(groupBy),
+                trim(having), mOrderBy, mLimit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query with specified ORDER BY clause.
+     * */
+    public SQLQuery orderBy(String orderBy) {
+        return new SQLQuery(mTable, mColumns, mDistinct, mWhere, mWhereArgs, mGroupBy, mHaving,
+                trim(orderBy), mLimit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query with specified max number of rows, or without limit,
+     * if {@code limit} is 0 or less.
+     * */
+    public SQLQuery limit(int limit) {
+        return limit(limit, mOffset);
+    }
+
+    /**
+     * @return The copy of this query with specified max number of rows and the number of
+     * rows to skip.
+     * */
+    public SQLQuery limit(int limit, int offset) {
+        return new SQLQuery(mTable, mColumns, mDistinct, mWhere, mWhereArgs, mGroupBy, mHaving,
+                mOrderBy, Math.max(limit, 0), Math.max(offset, 0));
+    }
+
+    /**
+     * @return The table of this query.
+     * */
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * @return The canonical SQL expression of this query, with {@code ?} placeholders.
+     * */
+    public String getSql() {
+        if (mSql == null) mSql = buildSql();
+        return mSql;
+    }
+
+    /**
+     * @return The arguments to bind to the SQL expression.
+     * */
+    public String[] getArgs() {
+        return mWhereArgs.clone();
+    }
+
+    /**
+     * Executes this query on specified database.
+     * @return The cursor, never null.
+     * @throws android.database.sqlite.SQLiteException If the query is wrong.
+     * */
+    public Cursor query(SQLiteDatabase db) {
+        return db.rawQuery(getSql(), mWhereArgs.length > 0 ? getArgs() : null);
+    }
+
+    /**
+     * Builds the canonical SQL expression.
+     * */
+    private String buildSql() {
+        final StringBuilder sql = new StringBuilder(128).append("SELECT ");
+        if (mDistinct) sql.append("DISTINCT ");
+        if (mColumns != null) {
+            for (int i = 0; i < mColumns.length; i++) {
+                if (i > 0) sql.append(", ");
+                sql.append(mColumns[i].trim());
+            }
+        } else {
+            sql.append('*');
+        }
+        sql.append(" FROM ").append(mTable);
+        if (mWhere != null) sql.append(" WHERE ").append(mWhere);
+        if (mGroupBy != null) sql.append(" GROUP BY ").append(mGroupBy);
+        if (mGroupBy != null && mHaving != null) sql.append(" HAVING ").append(mHaving);
+        if (mOrderBy != null) sql.append(" ORDER BY ").append(mOrderBy);
+        if (mLimit > 0 || mOffset > 0) sql.append(" LIMIT ").append(mLimit > 0 ? mLimit : -1);
+        if (mOffset > 0) sql.append(" OFFSET ").append(mOffset);
+        return sql.toString();
+    }
+
+    /**
+     * @return The trimmed string, or null if it is empty.
+     * */
+    private static String trim(String value) {
+        return StrUtils.isEmpty(value) ? null : value.trim();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SQLQuery)) return false;
+        final SQLQuery query = (SQLQuery) o;
+        return getSql().equals(query.getSql()) && Arrays.equals(mWhereArgs, query.mWhereArgs);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        return 31 * getSql().hashCode() + Arrays.hashCode(mWhereArgs);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getSql() + " " + Arrays.toString(mWhereArgs);
+    }
+}
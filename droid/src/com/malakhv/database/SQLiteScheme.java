@@ -18,8 +18,12 @@
 
 package com.malakhv.database;
 
+import android.database.Cursor;
 import android.provider.BaseColumns;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The common SQLite database scheme.
  * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
@@ -44,6 +48,7 @@ public class SQLiteScheme {
          * The unique global ID for a row.
          * <p>Type: INTEGER</p>
          * */
+        @Column(value = Cursor.FIELD_TYPE_INTEGER, index = true)
         String COLUMN_GLOBAL_ID = "_id_global";
     }
 
@@ -56,7 +61,7 @@ public class SQLiteScheme {
          * The localisation of a row object.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, index = true)
         String COLUMN_LOCALE = "locale";
     }
 
@@ -70,7 +75,7 @@ public class SQLiteScheme {
          * {@code 50.083698,45.407367}).
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(Cursor.FIELD_TYPE_STRING)
         String COLUMN_LOCATION = "location";
     }
 
@@ -84,28 +89,28 @@ public class SQLiteScheme {
          * The direct link to a row object on Google map.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, order = 1)
         String COLUMN_MAP_GOOGLE = "google";
 
         /**
          * The direct link to a row object on MAPS.ME map.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, order = 2)
         String COLUMN_MAP_MAPSME = "mapsme";
 
         /**
          * The direct link to a row object on Mapy.cz map.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, order = 3)
         String COLUMN_MAP_MAPYCZ = "mapycz";
 
         /**
          * The direct link to a row object on Yandex map.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, order = 4)
         String COLUMN_MAP_YANDEX = "yandex";
 
     }
@@ -119,7 +124,7 @@ public class SQLiteScheme {
          * The web link to a row object.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(Cursor.FIELD_TYPE_STRING)
         String COLUMN_WEB = "web";
     }
 
@@ -132,7 +137,7 @@ public class SQLiteScheme {
          * The Wikipedia link to a row object.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(Cursor.FIELD_TYPE_STRING)
         String COLUMN_WIKI = "wiki";
     }
 
@@ -145,7 +150,7 @@ public class SQLiteScheme {
          * The stock keeping unit.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(Cursor.FIELD_TYPE_STRING)
         String COLUMN_SKU = "sku";
     }
 
@@ -163,14 +168,15 @@ public class SQLiteScheme {
          * we can use only language code in app.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING,
+                constraint = "PRIMARY KEY ASC UNIQUE NOT NULL", order = 1)
         public static final String COLUMN_CODE = "code";
 
         /**
          * The locale name on its language.
          * <p>Type: TEXT</p>
          * */
-        // @Column(Cursor.FIELD_TYPE_STRING)
+        @Column(value = Cursor.FIELD_TYPE_STRING, constraint = "NOT NULL", order = 2)
         public static final String COLUMN_NAME = "name";
 
         /**
@@ -178,6 +184,8 @@ public class SQLiteScheme {
          * default, it's {@code true}.
          * <p>Type: BOOLEAN</p>
          * */
+        @Column(value = Cursor.FIELD_TYPE_INTEGER, type = "BOOLEAN", constraint = "DEFAULT (1)",
+                order = 3)
         public static final String COLUMN_ENABLED = "enabled";
 
         /** The SQL expression to create this table. */
@@ -203,6 +211,370 @@ public class SQLiteScheme {
                 + " WHERE " + TABLE_NAME + "." + COLUMN_ENABLED + " = 1;";
     }
 
+    /**
+     * The full-text search index for a table. The index is an external content FTS virtual
+     * table (named as the table with {@link #SUFFIX} suffix) which is kept in sync with the
+     * content table by triggers, so it doesn't duplicate the data. The content table should
+     * have {@link BaseColumns#_ID} column as {@code INTEGER PRIMARY KEY}.
+     * <p>The {@link #MODULE_FTS4} is available on all Android versions, the
+     * {@link #MODULE_FTS5} has a better ranking (bm25), but it is available only in
+     * SQLite builds with FTS5 extension.</p>
+     * */
+    public static class FtsIndex {
+
+        /** The FTS4 module. */
+        public static final String MODULE_FTS4 = "fts4";
+
+        /** The FTS5 module. */
+        public static final String MODULE_FTS5 = "fts5";
+
+        /** The suffix of index name. */
+        public static final String SUFFIX = "_fts";
+
+        /**
+         * The column with snippet of matched text in the search results.
+         * <p>Type: TEXT</p>
+         * */
+        public static final String COLUMN_SNIPPET = "snippet";
+
+        /** The default markers of matched terms in the snippets. */
+        private static final String SNIPPET_START = "<b>", SNIPPET_END = "</b>";
+
+        /** The default ellipses in the snippets. */
+        private static final String SNIPPET_ELLIPSES = "...";
+
+        /** The default max number of tokens in the snippets. */
+        private static final int SNIPPET_TOKENS = 16;
+
+        /** The content table. */
+        private final String mTable;
+
+        /** The FTS module. */
+        private final String mModule;
+
+        /** The indexed columns of the content table. */
+        private final String[] mColumns;
+
+        /**
+         * Construct a new {@link FtsIndex} instance with specified parameters.
+         * @param table The content table.
+         * @param module The FTS module, {@link #MODULE_FTS4} or {@link #MODULE_FTS5}.
+         * @param columns The indexed text columns of the content table.
+         * */
+        public FtsIndex(String table, String module, String... columns) {
+            if (columns == null || columns.length == 0) {
+                throw new IllegalArgumentException("No columns to index");
+            }
+            mTable = table; mModule = module; mColumns = columns.clone();
+        }
+
+        /** @return The content table. */
+        public String getTable() { return mTable; }
+
+        /** @return The name of this index (the FTS virtual table). */
+        public String getName() { return mTable + SUFFIX; }
+
+        /** @return True, if this index uses {@link #MODULE_FTS5}. */
+        public boolean isFts5() { return MODULE_FTS5.equals(mModule); }
+
+        /**
+         * @return The SQL expressions to create this index and its triggers. The index
+         * should be filled by {@link #getSqlRebuild()} if content table is not empty.
+         * */
+        public String[] getSqlCreate() {
+            final String name = getName();
+            final String cols = join("", mColumns);
+            final String newCols = join("new.", mColumns);
+            final String oldCols = join("old.", mColumns);
+            final String create;
+            final String insert = "INSERT INTO " + name + " (rowid, " + cols + ") VALUES (new."
+                    + BaseColumns._ID + ", " + newCols + ");";
+            final String delete;
+            if (isFts5()) {
+                create = "CREATE VIRTUAL TABLE " + name + " USING fts5(" + cols
+                        + ", content='" + mTable + "', content_rowid='" + BaseColumns._ID
+                        + "');";
+                delete = "INSERT INTO " + name + " (" + name + ", rowid, " + cols
+                        + ") VALUES ('delete', old." + BaseColumns._ID + ", " + oldCols + ");";
+            } else {
+                create = "CREATE VIRTUAL TABLE " + name + " USING fts4(" + cols
+                        + ", content=\"" + mTable + "\");";
+                delete = "DELETE FROM " + name + " WHERE docid = old." + BaseColumns._ID + ";";
+            }
+            final String insertTrigger = "CREATE TRIGGER " + name + "_ai AFTER INSERT ON "
+                    + mTable + " BEGIN " + insert + " END;";
+            if (isFts5()) {
+                return new String[] { create, insertTrigger,
+                        "CREATE TRIGGER " + name + "_ad AFTER DELETE ON " + mTable
+                                + " BEGIN " + delete + " END;",
+                        "CREATE TRIGGER " + name + "_au AFTER UPDATE ON " + mTable
+                                + " BEGIN " + delete + " " + insert + " END;"
+                };
+            }
+            // FTS4 reads old tokens from content table, so they should be deleted before
+            return new String[] { create, insertTrigger,
+                    "CREATE TRIGGER " + name + "_bd BEFORE DELETE ON " + mTable
+                            + " BEGIN " + delete + " END;",
+                    "CREATE TRIGGER " + name + "_bu BEFORE UPDATE ON " + mTable
+                            + " BEGIN " + delete + " END;",
+                    "CREATE TRIGGER " + name + "_au AFTER UPDATE ON " + mTable
+                            + " BEGIN " + insert + " END;"
+            };
+        }
+
+        /**
+         * @return The SQL expressions to drop this index and its triggers.
+         * */
+        public String[] getSqlDrop() {
+            final String name = getName();
+            return new String[] {
+                    "DROP TRIGGER IF EXISTS " + name + "_ai;",
+                    "DROP TRIGGER IF EXISTS " + name + "_ad;",
+                    "DROP TRIGGER IF EXISTS " + name + "_bd;",
+                    "DROP TRIGGER IF EXISTS " + name + "_bu;",
+                    "DROP TRIGGER IF EXISTS " + name + "_au;",
+                    "DROP TABLE IF EXISTS " + name + ";"
+            };
+        }
+
+        /**
+         * @return The SQL expression to rebuild this index from the content table.
+         * */
+        public String getSqlRebuild() {
+            return "INSERT INTO " + getName() + " (" + getName() + ") VALUES ('rebuild');";
+        }
+
+        /**
+         * @return The SQL query for search: all columns of matched rows of content table and
+         * the {@link #COLUMN_SNIPPET}, ordered by rank. The query has one argument, the
+         * {@code MATCH} expression, and one more, if {@code hasLocale} is true.
+         * */
+        public String getSqlSearch(boolean hasLocale, int limit) {
+            final String name = getName();
+            final String snippet = isFts5()
+                    ? "snippet(" + name + ", -1, '" + SNIPPET_START + "', '" + SNIPPET_END
+                            + "', '" + SNIPPET_ELLIPSES + "', " + SNIPPET_TOKENS + ")"
+                    : "snippet(" + name + ", '" + SNIPPET_START + "', '" + SNIPPET_END
+                            + "', '" + SNIPPET_ELLIPSES + "', -1, " + SNIPPET_TOKENS + ")";
+            // FTS4 has no rank function, the number of matches is a good approximation
+            final String rank = isFts5() ? name + ".rank"
+                    : "length(offsets(" + name + ")) DESC";
+            return "SELECT t.*, " + snippet + " AS " + COLUMN_SNIPPET
+                    + " FROM " + name + " JOIN " + mTable + " AS t ON t." + BaseColumns._ID
+                    + " = " + name + ".rowid WHERE " + name + " MATCH ?"
+                    + (hasLocale ? " AND t." + LocaleTable.COLUMN_LOCALE + " = ?" : "")
+                    + " ORDER BY " + rank + (limit > 0 ? " LIMIT " + limit : "") + ";";
+        }
+
+        /**
+         * Converts a user input to the safe {@code MATCH} expression: each word becomes
+         * a quoted prefix term, so FTS syntax characters in input cannot break the query.
+         * @return The {@code MATCH} expression, or {@code null} if there are no words.
+         * */
+        public String toMatchQuery(String text) {
+            if (text == null) return null;
+            final StringBuilder builder = new StringBuilder();
+            for (String word : text.trim().split("\\s+")) {
+                if (word.isEmpty()) continue;
+                if (builder.length() > 0) builder.append(' ');
+                final String quoted = word.replace("\"", "\"\"");
+                builder.append('"').append(quoted).append(isFts5() ? "\"*" : "*\"");
+            }
+            return builder.length() > 0 ? builder.toString() : null;
+        }
+
+        /**
+         * Joins specified columns to a comma separated list with specified {@code prefix}.
+         * */
+        private static String join(String prefix, String[] columns) {
+            final StringBuilder builder = new StringBuilder();
+            for (String column : columns) {
+                if (builder.length() > 0) builder.append(", ");
+                builder.append(prefix).append(column);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * The spatial index for a table which implements {@link LocationTable}. The index is
+     * a companion table (named as the table with {@link #SUFFIX} suffix) which contains
+     * the bounding box of {@link LocationTable#COLUMN_LOCATION} for each row, and it is kept
+     * in sync with the content table by triggers. The content table should have
+     * {@link BaseColumns#_ID} column as {@code INTEGER PRIMARY KEY}.
+     * <p>The {@link #MODULE_RTREE} needs SQLite build with R*Tree extension. If it isn't
+     * available, the {@link #MODULE_TABLE} (ordinary table with the same columns and
+     * B-tree index by latitude) can be used with the same queries.</p>
+     * <p>The longitude bounds are not wrapped, so bounding boxes across the
+     * 180th meridian are not supported.</p>
+     * */
+    public static class SpatialIndex {
+
+        /** The R*Tree module. */
+        public static final String MODULE_RTREE = "rtree";
+
+        /** The ordinary table, for SQLite builds without R*Tree extension. */
+        public static final String MODULE_TABLE = "table";
+
+        /** The suffix of index name. */
+        public static final String SUFFIX = "_geo";
+
+        /** The column with id of content table's row. */
+        public static final String COLUMN_ID = "id";
+
+        /** The bounds columns. */
+        public static final String COLUMN_MIN_LAT = "min_lat", COLUMN_MAX_LAT = "max_lat",
+                COLUMN_MIN_LON = "min_lon", COLUMN_MAX_LON = "max_lon";
+
+        /** The content table. */
+        private final String mTable;
+
+        /** The index module. */
+        private final String mModule;
+
+        /**
+         * Construct a new {@link SpatialIndex} instance with specified parameters.
+         * @param table The content table.
+         * @param module The index module, {@link #MODULE_RTREE} or {@link #MODULE_TABLE}.
+         * */
+        public SpatialIndex(String table, String module) {
+            mTable = table; mModule = module;
+        }
+
+        /** @return The content table. */
+        public String getTable() { return mTable; }
+
+        /** @return The name of this index (the companion table). */
+        public String getName() { return mTable + SUFFIX; }
+
+        /** @return True, if this index uses {@link #MODULE_RTREE}. */
+        public boolean isRTree() { return MODULE_RTREE.equals(mModule); }
+
+        /**
+         * @return The SQL expressions to create this index and its triggers. The index
+         * should be filled by {@link #getSqlRebuild()} if content table is not empty.
+         * */
+        public String[] getSqlCreate() {
+            final String name = getName();
+            final String create = isRTree()
+                    ? "CREATE VIRTUAL TABLE " + name + " USING rtree(" + COLUMN_ID + ", "
+                            + COLUMN_MIN_LAT + ", " + COLUMN_MAX_LAT + ", " + COLUMN_MIN_LON
+                            + ", " + COLUMN_MAX_LON + ");"
+                    : "CREATE TABLE " + name + " (" + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                            + COLUMN_MIN_LAT + " REAL, " + COLUMN_MAX_LAT + " REAL, "
+                            + COLUMN_MIN_LON + " REAL, " + COLUMN_MAX_LON + " REAL);";
+            final String delete = "DELETE FROM " + name + " WHERE " + COLUMN_ID + " = old."
+                    + BaseColumns._ID + ";";
+            final String insert = "INSERT OR REPLACE INTO " + name + " SELECT "
+                    + getSqlBounds("new.") + " WHERE " + getSqlValid("new.") + ";";
+            final List<String> sql = new ArrayList<>(5);
+            sql.add(create);
+            if (!isRTree()) {
+                sql.add("CREATE INDEX " + name + "_lat ON " + name + " (" + COLUMN_MIN_LAT
+                        + ");");
+            }
+            sql.add("CREATE TRIGGER " + name + "_ai AFTER INSERT ON " + mTable
+                    + " BEGIN " + insert + " END;");
+            sql.add("CREATE TRIGGER " + name + "_au AFTER UPDATE OF " + BaseColumns._ID + ", "
+                    + LocationTable.COLUMN_LOCATION + " ON " + mTable
+                    + " BEGIN " + delete + " " + insert + " END;");
+            sql.add("CREATE TRIGGER " + name + "_ad AFTER DELETE ON " + mTable
+                    + " BEGIN " + delete + " END;");
+            return sql.toArray(new String[0]);
+        }
+
+        /**
+         * @return The SQL expressions to drop this index and its triggers.
+         * */
+        public String[] getSqlDrop() {
+            final String name = getName();
+            return new String[] {
+                    "DROP TRIGGER IF EXISTS " + name + "_ai;",
+                    "DROP TRIGGER IF EXISTS " + name + "_au;",
+                    "DROP TRIGGER IF EXISTS " + name + "_ad;",
+                    "DROP TABLE IF EXISTS " + name + ";"
+            };
+        }
+
+        /**
+         * @return The SQL expressions to rebuild this index from the content table.
+         * */
+        public String[] getSqlRebuild() {
+            return new String[] {
+                    "DELETE FROM " + getName() + ";",
+                    "INSERT INTO " + getName() + " SELECT " + getSqlBounds("") + " FROM "
+                            + mTable + " WHERE " + getSqlValid("") + ";"
+            };
+        }
+
+        /**
+         * @return The SQL query for all columns of rows within a bounding box, ordered by
+         * approximate distance to a point. The query arguments are: the bounds (see
+         * {@link #getSqlBox()}), locale (if {@code hasLocale} is true), point's latitude,
+         * point's longitude and the square of cosine of point's latitude.
+         * */
+        public String getSqlQuery(boolean hasLocale, int limit) {
+            // The equirectangular approximation, it's enough for ordering
+            final int first = hasLocale ? 8 : 7;
+            final String dLat = "(g." + COLUMN_MIN_LAT + " - ?" + first + ")";
+            // The difference of longitudes can be across the antimeridian
+            final String diff = "abs(g." + COLUMN_MIN_LON + " - ?" + (first + 1) + ")";
+            final String dLon = "min(" + diff + ", 360 - " + diff + ")";
+            final String cos = "?" + (first + 2);
+            return "SELECT t.* FROM " + getSqlBox() + " AS g JOIN " + mTable + " AS t ON t."
+                    + BaseColumns._ID + " = g." + COLUMN_ID
+                    + (hasLocale ? " WHERE t." + LocaleTable.COLUMN_LOCALE + " = ?7" : "")
+                    + " ORDER BY " + dLat + " * " + dLat + " + " + dLon + " * " + dLon + " * "
+                    + cos + (limit > 0 ? " LIMIT " + limit : "") + ";";
+        }
+
+        /**
+         * @return The SQL query for the number of rows within a bounding box. The query
+         * arguments are: the bounds (see {@link #getSqlBox()}) and locale (if
+         * {@code hasLocale} is true).
+         * */
+        public String getSqlCount(boolean hasLocale) {
+            return "SELECT count(*) FROM " + getSqlBox() + " AS g"
+                    + (hasLocale ? " JOIN " + mTable + " AS t ON t." + BaseColumns._ID
+                            + " = g." + COLUMN_ID + " WHERE t." + LocaleTable.COLUMN_LOCALE
+                            + " = ?7" : "") + ";";
+        }
+
+        /**
+         * @return The SQL subquery for the index rows within a bounding box. The box can
+         * cross the antimeridian, so it is two ranges of longitude, each of them is a fast
+         * index query. The arguments are: max latitude, min latitude, max and min longitude
+         * of the first range, max and min longitude of the second range (to skip it, use
+         * {@code -181} and {@code 181}).
+         * */
+        private String getSqlBox() {
+            final String lat = " WHERE " + COLUMN_MIN_LAT + " <= ?1 AND " + COLUMN_MAX_LAT
+                    + " >= ?2";
+            return "(SELECT * FROM " + getName() + lat + " AND " + COLUMN_MIN_LON + " <= ?3 AND "
+                    + COLUMN_MAX_LON + " >= ?4 UNION ALL SELECT * FROM " + getName() + lat
+                    + " AND " + COLUMN_MIN_LON + " <= ?5 AND " + COLUMN_MAX_LON + " >= ?6)";
+        }
+
+        /**
+         * @return The SQL expression for the index row of a content table's row.
+         * */
+        private static String getSqlBounds(String prefix) {
+            final String loc = prefix + LocationTable.COLUMN_LOCATION;
+            final String lat = "CAST(substr(" + loc + ", 1, instr(" + loc + ", ',') - 1)"
+                    + " AS REAL)";
+            final String lon = "CAST(substr(" + loc + ", instr(" + loc + ", ',') + 1)"
+                    + " AS REAL)";
+            return prefix + BaseColumns._ID + ", " + lat + ", " + lat + ", " + lon + ", " + lon;
+        }
+
+        /**
+         * @return The SQL condition for a content table's row with location.
+         * */
+        private static String getSqlValid(String prefix) {
+            return "instr(" + prefix + LocationTable.COLUMN_LOCATION + ", ',') > 0";
+        }
+    }
+
     /** This class has only static data, not need to create instance. */
     protected SQLiteScheme() { /* Empty */ }
 }
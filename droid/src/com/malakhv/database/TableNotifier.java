@@ -0,0 +1,217 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The registry of table observers of a database. It collects the names of changed tables,
+ * and notifies observers on a background thread. The changes made in a transaction are
+ * collected until the transaction is committed (and dropped if it is rolled back), and
+ * all changes made during the notification delay are coalesced into one notification.
+ * @see DBSQLite#registerObserver(DBSQLite.TableObserver, String...)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class TableNotifier {
+
+    /** The tag for LogCat. */
+    private static final String TAG = TableNotifier.class.getSimpleName();
+
+    /** The default notification delay, in milliseconds. */
+    static final long DEFAULT_DELAY = 100;
+
+    /** The pattern to find the table changed by SQL statement. */
+    private static final Pattern WRITE_PATTERN = Pattern.compile("^\\s*(?:"
+            + "INSERT(?:\\s+OR\\s+\\w+)?\\s+INTO|REPLACE\\s+INTO|UPDATE(?:\\s+OR\\s+\\w+)?"
+            + "|DELETE\\s+FROM|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?|ALTER\\s+TABLE"
+            + ")\\s+[\"'`\\[]?([\\w.]+)", Pattern.CASE_INSENSITIVE);
+
+    /** The prefix of tables in the main database. */
+    private static final String SCHEMA_MAIN = "main.";
+
+    /** The background thread for all notifications. */
+    private static HandlerThread sThread = null;
+
+    /** The observers and their tables (empty set means all tables). */
+    private final Map<DBSQLite.TableObserver, Set<String>> mObservers = new HashMap<>();
+
+    /** The changed tables, which are waiting for notification. */
+    private final Set<String> mPending = new HashSet<>();
+
+    /** The changed tables in the current transaction, per thread. */
+    private final ThreadLocal<Set<String>> mTransaction = new ThreadLocal<>();
+
+    /** The notification delay, in milliseconds. */
+    private volatile long mDelay = DEFAULT_DELAY;
+
+    /** The handler of the background thread, or null, if there are no observers yet. */
+    private Handler mHandler = null;
+
+    /** True, if the notification has been already scheduled. */
+    private boolean mScheduled = false;
+
+    /** The notification task. */
+    private final Runnable mDispatch = this::dispatch;
+
+    /**
+     * @return The table changed by specified SQL statement, or null.
+     * */
+    static String findTable(String sql) {
+        if (sql == null) return null;
+        final Matcher matcher = WRITE_PATTERN.matcher(sql);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Sets the notification delay, in milliseconds.
+     * */
+    void setDelay(long delay) {
+        mDelay = Math.max(delay, 0);
+    }
+
+    /**
+     * Registers specified {@code observer} for specified tables, or for all tables if
+     * {@code tables} is empty.
+     * */
+    synchronized void register(DBSQLite.TableObserver observer, String... tables) {
+        if (observer == null) return;
+        final Set<String> set = new HashSet<>();
+        if (tables != null) {
+            for (String table : tables) if (table != null) set.add(normalize(table));
+        }
+        mObservers.put(observer, set);
+        if (mHandler == null) mHandler = new Handler(getThread().getLooper());
+    }
+
+    /**
+     * Unregisters specified {@code observer}.
+     * */
+    synchronized void unregister(DBSQLite.TableObserver observer) {
+        mObservers.remove(observer);
+    }
+
+    /**
+     * Starts collecting of changes in a transaction on the current thread.
+     * @return True, if this is the outermost transaction.
+     * */
+    boolean beginTransaction() {
+        if (mTransaction.get() != null) return false;
+        mTransaction.set(new HashSet<>());
+        return true;
+    }
+
+    /**
+     * Ends the outermost transaction on the current thread.
+     * @param committed True, if the transaction has been committed.
+     * */
+    void endTransaction(boolean committed) {
+        final Set<String> tables = mTransaction.get();
+        mTransaction.remove();
+        if (committed && tables != null && !tables.isEmpty()) publish(tables);
+    }
+
+    /**
+     * Records the changes of specified tables.
+     * */
+    void notifyChanged(String... tables) {
+        if (tables == null || tables.length == 0) return;
+        final Set<String> set = new HashSet<>(tables.length);
+        for (String table : tables) if (table != null) set.add(normalize(table));
+        if (set.isEmpty()) return;
+        final Set<String> transaction = mTransaction.get();
+        if (transaction != null) {
+            transaction.addAll(set);
+        } else {
+            publish(set);
+        }
+    }
+
+    /**
+     * Adds specified tables to pending notification and schedules it.
+     * */
+    private synchronized void publish(Set<String> tables) {
+        if (mObservers.isEmpty()) return;
+        mPending.addAll(tables);
+        if (!mScheduled) {
+            mScheduled = true;
+            mHandler.postDelayed(mDispatch, mDelay);
+        }
+    }
+
+    /**
+     * Notifies observers about changed tables, it runs on the background thread.
+     * */
+    private void dispatch() {
+        final Set<String> changed;
+        final Map<DBSQLite.TableObserver, Set<String>> observers;
+        synchronized (this) {
+            mScheduled = false;
+            changed = Collections.unmodifiableSet(new HashSet<>(mPending));
+            mPending.clear();
+            observers = new HashMap<>(mObservers);
+        }
+        if (changed.isEmpty()) return;
+        for (Map.Entry<DBSQLite.TableObserver, Set<String>> entry : observers.entrySet()) {
+            final Set<String> filter = entry.getValue();
+            Set<String> tables = changed;
+            if (!filter.isEmpty()) {
+                tables = new HashSet<>(changed);
+                tables.retainAll(filter);
+                if (tables.isEmpty()) continue;
+                tables = Collections.unmodifiableSet(tables);
+            }
+            try {
+                entry.getKey().onTablesChanged(tables);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Table observer failed", e);
+            }
+        }
+    }
+
+    /**
+     * @return The table name in the canonical form (lower case, without "main" schema).
+     * */
+    private static String normalize(String table) {
+        final String name = table.toLowerCase(Locale.US);
+        return name.startsWith(SCHEMA_MAIN) ? name.substring(SCHEMA_MAIN.length()) : name;
+    }
+
+    /**
+     * @return The background thread for notifications.
+     * */
+    private static synchronized HandlerThread getThread() {
+        if (sThread == null) {
+            sThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            sThread.start();
+        }
+        return sThread;
+    }
+}
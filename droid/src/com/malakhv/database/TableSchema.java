@@ -0,0 +1,450 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.database;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import com.malakhv.util.StrUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The schema of a table, it is built from {@link Column} annotations of a scheme class (its
+ * superclasses and interfaces included), once per class and table. If the scheme class
+ * implements {@link BaseColumns}, the table has {@link BaseColumns#_ID} column as
+ * {@code INTEGER PRIMARY KEY}.
+ * <pre>
+ *     TableSchema schema = TableSchema.of("places", PlaceTable.class);
+ *     DBSQLite.createTable(db, schema);
+ * </pre>
+ * @see Column
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class TableSchema {
+
+    /** The suffix of index names. */
+    public static final String INDEX_SUFFIX = "_idx";
+
+    /** The cache of schemas, by scheme class and table. */
+    private static final Map<String, TableSchema> sCache = new HashMap<>();
+
+    /** The table name. */
+    private final String mTable;
+
+    /** The column declarations, by column name, in column order. */
+    private final Map<String, Column> mColumns;
+
+    /** The positions of columns, by column name. */
+    private final Map<String, Integer> mPositions;
+
+    /** The column names, in column order. */
+    private final String[] mNames;
+
+    /** True, if the table has {@link BaseColumns#_ID} column. */
+    private final boolean mHasId;
+
+    /**
+     * Construct a new {@link TableSchema} instance with specified parameters.
+     * */
+    private TableSchema(String table, Map<String, Column> columns, boolean hasId) {
+        mTable = table; mColumns = columns; mHasId = hasId;
+        final List<String> names = new ArrayList<>(columns.size() + 1);
+        if (hasId) names.add(BaseColumns._ID);
+        names.addAll(columns.keySet());
+        mNames = names.toArray(new String[0]);
+        mPositions = new HashMap<>(mNames.length * 2);
+        for (int i = 0; i < mNames.length; i++) mPositions.put(mNames[i], i);
+    }
+
+    /**
+     * @return The schema of specified {@code table} declared by specified {@code scheme}
+     * class, it is built once and cached.
+     * @throws IllegalArgumentException If the table is empty, or the scheme has no columns.
+     * */
+    public static TableSchema of(String table, Class<?> scheme) {
+        if (StrUtils.isEmpty(table) || scheme == null) {
+            throw new IllegalArgumentException("The table and scheme must be not empty");
+        }
+        final String key = scheme.getName() + StrUtils.CHAR_SLASH + table;
+        synchronized (sCache) {
+            TableSchema schema = sCache.get(key);
+            if (schema == null) {
+                final Map<String, Column> columns = new LinkedHashMap<>();
+                collect(scheme, columns);
+                final boolean hasId = BaseColumns.class.isAssignableFrom(scheme);
+                columns.remove(BaseColumns._ID);
+                if (columns.isEmpty() && !hasId) {
+                    throw new IllegalArgumentException("No columns in " + scheme.getName());
+                }
+                schema = new TableSchema(table, columns, hasId);
+                sCache.put(key, schema);
+            }
+            return schema;
+        }
+    }
+
+    /**
+     * Collects the annotated columns of specified class: from superclass, then from
+     * interfaces, then its own columns ordered by {@link Column#order()} and name, since
+     * the order of fields returned by reflection is not defined.
+     * */
+    private static void collect(Class<?> scheme, Map<String, Column> columns) {
+        if (scheme == null || scheme == Object.class) return;
+        collect(scheme.getSuperclass(), columns);
+        for (Class<?> i : scheme.getInterfaces()) collect(i, columns);
+        final Map<String, Column> own = new HashMap<>();
+        for (Field field : scheme.getDeclaredFields()) {
+            final Column column = field.getAnnotation(Column.class);
+            if (column == null || field.getType() != String.class
+                    || !Modifier.isStatic(field.getModifiers())) continue;
+            try {
+                field.setAccessible(true);
+                final String name = (String) field.get(null);
+                if (!StrUtils.isEmpty(name) && !columns.containsKey(name)) {
+                    own.put(name, column);
+                }
+            } catch (IllegalAccessException | SecurityException e) {
+                // Skip inaccessible field
+            }
+        }
+        final List<String> names = new ArrayList<>(own.keySet());
+        Collections.sort(names, (a, b) -> {
+            final int order = Integer.compare(own.get(a).order(), own.get(b).order());
+            return order != 0 ? order : a.compareTo(b);
+        });
+        for (String name : names) columns.put(name, own.get(name));
+    }
+
+    /**
+     * @return The table name.
+     * */
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * @return The column names, in column order, see {@link Column#order()}.
+     * */
+    public String[] getColumns() {
+        return mNames.clone();
+    }
+
+    /**
+     * @return The position of specified column in {@link #getColumns()}, or -1.
+     * */
+    public int getPosition(String column) {
+        final Integer position = column != null ? mPositions.get(column) : null;
+        return position != null ? position : -1;
+    }
+
+    /**
+     * @return The type of specified column, one of {@code Cursor.FIELD_TYPE_*} constants,
+     * or {@link Cursor#FIELD_TYPE_NULL}, if there is no such column.
+     * */
+    public int getType(String column) {
+        if (mHasId && BaseColumns._ID.equals(column)) return Cursor.FIELD_TYPE_INTEGER;
+        final Column declaration = column != null ? mColumns.get(column) : null;
+        return declaration != null ? declaration.value() : Cursor.FIELD_TYPE_NULL;
+    }
+
+    /**
+     * @return The SQL expression to create the table.
+     * */
+    public String getSqlCreate() {
+        final StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
+                .append(mTable).append(" (");
+        boolean first = true;
+        if (mHasId) {
+            sql.append(BaseColumns._ID).append(" INTEGER PRIMARY KEY");
+            first = false;
+        }
+        for (Map.Entry<String, Column> entry : mColumns.entrySet()) {
+            if (!first) sql.append(", ");
+            first = false;
+            final Column column = entry.getValue();
+            sql.append(entry.getKey());
+            final String type = !StrUtils.isEmpty(column.type()) ? column.type()
+                    : getSqlType(column.value());
+            if (!type.isEmpty()) sql.append(' ').append(type);
+            if (!StrUtils.isEmpty(column.constraint())) {
+                sql.append(' ').append(column.constraint().trim());
+            }
+        }
+        return sql.append(");").toString();
+    }
+
+    /**
+     * @return The SQL expressions to create indexes of the table, for columns declared
+     * with {@link Column#index()}.
+     * */
+    public String[] getSqlIndexes() {
+        final List<String> sql = new ArrayList<>();
+        for (Map.Entry<String, Column> entry : mColumns.entrySet()) {
+            if (!entry.getValue().index()) continue;
+            final String column = entry.getKey();
+            sql.add("CREATE INDEX IF NOT EXISTS " + mTable + "_" + column + INDEX_SUFFIX
+                    + " ON " + mTable + " (" + column + ");");
+        }
+        return sql.toArray(new String[0]);
+    }
+
+    /**
+     * @return All SQL expressions to create the table with its indexes.
+     * */
+    public String[] getSql() {
+        final String[] indexes = getSqlIndexes();
+        final String[] sql = new String[indexes.length + 1];
+        sql[0] = getSqlCreate();
+        System.arraycopy(indexes, 0, sql, 1, indexes.length);
+        return sql;
+    }
+
+    /**
+     * @return The SQL type for specified {@code Cursor.FIELD_TYPE_*} constant.
+     * */
+    private static String getSqlType(int type) {
+        switch (type) {
+            case Cursor.FIELD_TYPE_INTEGER: return "INTEGER";
+            case Cursor.FIELD_TYPE_FLOAT: return "REAL";
+            case Cursor.FIELD_TYPE_BLOB: return "BLOB";
+            case Cursor.FIELD_TYPE_STRING: return "TEXT";
+            default: return "";
+        }
+    }
+
+    /**
+     * @return The binding of this schema to specified cursor, it resolves the column indexes
+     * once, so the values can be read without lookups in the cursor. The accessors by column
+     * position (see {@link #getPosition(String)}) have no lookups at all, so they should be
+     * used in loops over large cursors.
+     * */
+    public Binding bind(Cursor cursor) {
+        return new Binding(cursor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return getSqlCreate();
+    }
+
+    /**
+     * The binding of a schema to a cursor, with typed accessors to the values of current
+     * cursor row. The column indexes are resolved once, when the binding is created. Each
+     * accessor has two forms: by column name, which looks up the column position, and by
+     * column position in {@link #getColumns()}, which reads the cached index directly.
+     * */
+    public final class Binding {
+
+        /** The cursor. */
+        private final Cursor mCursor;
+
+        /** The cursor column indexes, by schema column position, or -1. */
+        private final int[] mIndexes;
+
+        /** The column types, by schema column position. */
+        private final int[] mTypes;
+
+        /**
+         * Construct a new {@link Binding} instance for specified cursor.
+         * */
+        Binding(Cursor cursor) {
+            mCursor = cursor;
+            mIndexes = new int[mNames.length];
+            mTypes = new int[mNames.length];
+            for (int i = 0; i < mNames.length; i++) {
+                mIndexes[i] = cursor != null ? cursor.getColumnIndex(mNames[i]) : -1;
+                mTypes[i] = getType(mNames[i]);
+            }
+        }
+
+        /**
+         * @return The cursor.
+         * */
+        public Cursor getCursor() {
+            return mCursor;
+        }
+
+        /**
+         * @return The cursor index of specified column, or -1, if the cursor doesn't
+         * contain this column.
+         * */
+        public int getIndex(String column) {
+            return getIndex(getPosition(column));
+        }
+
+        /**
+         * @return The cursor index of the column at specified position, or -1, if the
+         * cursor doesn't contain this column.
+         * */
+        public int getIndex(int position) {
+            return position >= 0 && position < mIndexes.length ? mIndexes[position] : -1;
+        }
+
+        /**
+         * @return True, if the cursor contains specified column.
+         * */
+        public boolean has(String column) {
+            return getIndex(column) >= 0;
+        }
+
+        /**
+         * @return True, if the value of specified column is null or there is no such column.
+         * */
+        public boolean isNull(String column) {
+            return isNull(getPosition(column));
+        }
+
+        /**
+         * @return True, if the value of the column at specified position is null or there is
+         * no such column.
+         * */
+        public boolean isNull(int position) {
+            final int index = getIndex(position);
+            return index < 0 || mCursor.isNull(index);
+        }
+
+        /**
+         * @return The value of specified column as {@link String}, or null.
+         * */
+        public String getString(String column) {
+            return getString(getPosition(column));
+        }
+
+        /**
+         * @return The value of the column at specified position as {@link String}, or null.
+         * */
+        public String getString(int position) {
+            final int index = getIndex(position);
+            return index >= 0 ? mCursor.getString(index) : null;
+        }
+
+        /**
+         * @return The value of specified column as {@code long}, or {@code def}.
+         * */
+        public long getLong(String column, long def) {
+            return getLong(getPosition(column), def);
+        }
+
+        /**
+         * @return The value of the column at specified position as {@code long}, or
+         * {@code def}.
+         * */
+        public long getLong(int position, long def) {
+            final int index = getIndex(position);
+            return index >= 0 && !mCursor.isNull(index) ? mCursor.getLong(index) : def;
+        }
+
+        /**
+         * @return The value of specified column as {@code int}, or {@code def}.
+         * */
+        public int getInt(String column, int def) {
+            return getInt(getPosition(column), def);
+        }
+
+        /**
+         * @return The value of the column at specified position as {@code int}, or
+         * {@code def}.
+         * */
+        public int getInt(int position, int def) {
+            final int index = getIndex(position);
+            return index >= 0 && !mCursor.isNull(index) ? mCursor.getInt(index) : def;
+        }
+
+        /**
+         * @return The value of specified column as {@code double}, or {@code def}.
+         * */
+        public double getDouble(String column, double def) {
+            return getDouble(getPosition(column), def);
+        }
+
+        /**
+         * @return The value of the column at specified position as {@code double}, or
+         * {@code def}.
+         * */
+        public double getDouble(int position, double def) {
+            final int index = getIndex(position);
+            return index >= 0 && !mCursor.isNull(index) ? mCursor.getDouble(index) : def;
+        }
+
+        /**
+         * @return The value of specified column as {@code boolean}, or {@code def}.
+         * */
+        public boolean getBoolean(String column, boolean def) {
+            return getBoolean(getPosition(column), def);
+        }
+
+        /**
+         * @return The value of the column at specified position as {@code boolean}, or
+         * {@code def}.
+         * */
+        public boolean getBoolean(int position, boolean def) {
+            final int index = getIndex(position);
+            return index >= 0 && !mCursor.isNull(index) ? mCursor.getLong(index) != 0 : def;
+        }
+
+        /**
+         * @return The value of specified column as byte array, or null.
+         * */
+        public byte[] getBlob(String column) {
+            return getBlob(getPosition(column));
+        }
+
+        /**
+         * @return The value of the column at specified position as byte array, or null.
+         * */
+        public byte[] getBlob(int position) {
+            final int index = getIndex(position);
+            return index >= 0 ? mCursor.getBlob(index) : null;
+        }
+
+        /**
+         * @return The value of specified column as object of its declared type
+         * ({@link Long}, {@link Double}, {@link String} or byte array), or null.
+         * */
+        public Object get(String column) {
+            return get(getPosition(column));
+        }
+
+        /**
+         * @return The value of the column at specified position as object of its declared
+         * type ({@link Long}, {@link Double}, {@link String} or byte array), or null.
+         * */
+        public Object get(int position) {
+            final int index = getIndex(position);
+            if (index < 0 || mCursor.isNull(index)) return null;
+            switch (mTypes[position]) {
+                case Cursor.FIELD_TYPE_INTEGER: return mCursor.getLong(index);
+                case Cursor.FIELD_TYPE_FLOAT: return mCursor.getDouble(index);
+                case Cursor.FIELD_TYPE_BLOB: return mCursor.getBlob(index);
+                default: return mCursor.getString(index);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The pool of I/O buffers: direct {@link ByteBuffer} for channel operations and byte arrays
+ * for stream operations. The buffers are expensive to allocate (direct ones especially),
+ * so they are reused by all I/O utilities of this package. The pool keeps a few buffers
+ * up to {@link #MAX_POOLED_SIZE} only, larger buffers are just allocated.
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class BufferPool {
+
+    /** The max number of pooled buffers of each kind. */
+    private static final int MAX_POOLED = 8;
+
+    /** The max size of pooled buffers, in bytes. */
+    static final int MAX_POOLED_SIZE = 1024 * 1024;
+
+    /** The pooled direct buffers. */
+    private static final ArrayDeque<ByteBuffer> sDirect = new ArrayDeque<>(MAX_POOLED);
+
+    /** The pooled byte arrays. */
+    private static final ArrayDeque<byte[]> sArrays = new ArrayDeque<>(MAX_POOLED);
+
+    /**
+     * @return The cleared direct buffer with specified limit, it should be returned by
+     * {@link #release(ByteBuffer)}.
+     * */
+    static ByteBuffer acquireDirect(int size) {
+        synchronized (sDirect) {
+            final Iterator<ByteBuffer> iterator = sDirect.iterator();
+            while (iterator.hasNext()) {
+                final ByteBuffer buffer = iterator.next();
+                if (buffer.capacity() < size) continue;
+                iterator.remove();
+                buffer.clear().limit(size);
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Returns specified direct buffer to the pool.
+     * */
+    static void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() > MAX_POOLED_SIZE) return;
+        synchronized (sDirect) {
+            if (sDirect.size() < MAX_POOLED) sDirect.push(buffer);
+        }
+    }
+
+    /**
+     * @return The byte array with specified length, it should be returned by
+     * {@link #release(byte[])}.
+     * */
+    static byte[] acquire(int size) {
+        synchronized (sArrays) {
+            final Iterator<byte[]> iterator = sArrays.iterator();
+            while (iterator.hasNext()) {
+                final byte[] buffer = iterator.next();
+                if (buffer.length != size) continue;
+                iterator.remove();
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Returns specified byte array to the pool.
+     * */
+    static void release(byte[] buffer) {
+        if (buffer == null || buffer.length > MAX_POOLED_SIZE) return;
+        synchronized (sArrays) {
+            if (sArrays.size() < MAX_POOLED) sArrays.push(buffer);
+        }
+    }
+
+    /**
+     * This class has only static data, not need to create instance.
+     * */
+    private BufferPool() { /* Empty */ }
+}
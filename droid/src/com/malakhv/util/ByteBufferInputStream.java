@@ -0,0 +1,94 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The stream to read a {@link ByteBuffer}, for example, a memory-mapped file. The stream
+ * reads its own view of the buffer, so the buffer position is not changed.
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+final class ByteBufferInputStream extends InputStream {
+
+    /** The buffer to read. */
+    private final ByteBuffer mBuffer;
+
+    /** The marked position. */
+    private int mMark = 0;
+
+    /**
+     * Construct a new {@link ByteBufferInputStream} instance to read remaining bytes of
+     * specified buffer.
+     * */
+    ByteBufferInputStream(ByteBuffer buffer) {
+        mBuffer = buffer.slice();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() {
+        return mBuffer.hasRemaining() ? mBuffer.get() & 0xFF : -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!mBuffer.hasRemaining()) return -1;
+        final int count = Math.min(len, mBuffer.remaining());
+        mBuffer.get(b, off, count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long skip(long n) {
+        if (n <= 0) return 0;
+        final int count = (int) Math.min(n, mBuffer.remaining());
+        mBuffer.position(mBuffer.position() + count);
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int available() {
+        return mBuffer.remaining();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void mark(int readLimit) {
+        mMark = mBuffer.position();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void reset() {
+        mBuffer.position(mMark);
+    }
+}
@@ -0,0 +1,503 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * The size-bounded disk cache with least recently used eviction. Each entry is stored in
+ * its own file, and all operations are recorded in the journal, so the cache survives the
+ * process death: the index is restored by replaying the journal. The entries are written
+ * to temporary files and renamed, so a reader never sees a partial entry. When the cache
+ * size exceeds the limit, the least recently used entries are removed in background.
+ * <pre>
+ *     DiskCache cache = DiskCache.open(new File(context.getCacheDir(), "tiles"), 64 * MB);
+ *     cache.put("tile_12_34", bytes);
+ *     try (InputStream in = cache.get("tile_12_34")) { ... }
+ * </pre>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class DiskCache implements Closeable {
+
+    /** The tag for LogCat. */
+    private static final String TAG = DiskCache.class.getSimpleName();
+
+    /** The entries of this size and larger are read via memory-mapped files. */
+    public static final int MMAP_THRESHOLD = 64 * 1024;
+
+    /** The journal file name. */
+    static final String JOURNAL = "cache.journal";
+
+    /** The temporary journal file name. */
+    static final String JOURNAL_TMP = "cache.journal.tmp";
+
+    /** The first line of the journal. */
+    private static final String JOURNAL_HEADER = "DroidKit.DiskCache 1";
+
+    /** The journal operations. */
+    private static final String OP_PUT = "PUT", OP_DEL = "DEL", OP_GET = "GET";
+
+    /** The suffix of temporary files. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** The pattern of valid keys. */
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+
+    /** The number of redundant journal records to compact the journal. */
+    private static final int MAX_REDUNDANT = 2000;
+
+    /** The journal charset. */
+    private static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    /** The counter of temporary files. */
+    private static final AtomicInteger sTmpCount = new AtomicInteger();
+
+    /** The cache directory. */
+    private final File mDir;
+
+    /** The sizes of entries, by key, in access order. */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The executor to remove entries in background. */
+    private final ExecutorService mExecutor = new ThreadPoolExecutor(0, 1, 60,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+                final Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** The max size of the cache, in bytes. */
+    private long mMaxSize;
+
+    /** The current size of the cache, in bytes. */
+    private long mSize = 0;
+
+    /** The journal writer, or null if the cache is closed. */
+    private Writer mJournal = null;
+
+    /** The number of journal records which don't affect the index. */
+    private int mRedundant = 0;
+
+    /** True, if the cleanup has been scheduled. */
+    private boolean mCleanup = false;
+
+    /**
+     * Construct a new {@link DiskCache} instance with specified parameters.
+     * */
+    private DiskCache(File dir, long maxSize) {
+        mDir = dir; mMaxSize = maxSize;
+    }
+
+    /**
+     * Opens the cache in specified directory, the directory is created if it doesn't exist.
+     * The directory should not be used for any other files, they will be removed.
+     * @param maxSize The max size of the cache, in bytes.
+     * @throws IOException If the directory or journal cannot be written.
+     * @throws IllegalArgumentException If the max size is not positive.
+     * */
+    public static DiskCache open(File dir, long maxSize) throws IOException {
+        if (dir == null || maxSize <= 0) {
+            throw new IllegalArgumentException("The dir must be not null, the size positive");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        final DiskCache cache = new DiskCache(dir, maxSize);
+        synchronized (cache) {
+            cache.readJournal();
+            cache.removeOrphans();
+            cache.rebuildJournal();
+            cache.scheduleCleanup();
+        }
+        return cache;
+    }
+
+    /**
+     * Replays the journal, if it exists. A broken record (for example, the last one, if the
+     * process has been killed) stops reading.
+     * */
+    private void readJournal() {
+        final File journal = new File(mDir, JOURNAL);
+        if (!journal.isFile()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journal), CHARSET))) {
+            if (!JOURNAL_HEADER.equals(reader.readLine())) return;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+                if (parts.length < 2 || !KEY_PATTERN.matcher(parts[1]).matches()) break;
+                if (OP_PUT.equals(parts[0]) && parts.length == 3) {
+                    mEntries.put(parts[1], Long.parseLong(parts[2]));
+                } else if (OP_DEL.equals(parts[0])) {
+                    mEntries.remove(parts[1]);
+                } else if (OP_GET.equals(parts[0])) {
+                    mEntries.get(parts[1]);
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Cannot read journal in " + mDir, e);
+        }
+
+        // Check entries, the files could be removed by system
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            if (new File(mDir, entry.getKey()).length() != entry.getValue()) {
+                iterator.remove();
+            } else {
+                mSize += entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * Removes the files which are not entries of the cache: temporary files and the files
+     * written before the process death, but not recorded in the journal.
+     * */
+    private void removeOrphans() {
+        final File[] files = mDir.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            final String name = file.getName();
+            if (JOURNAL.equals(name) || mEntries.containsKey(name)) continue;
+            if (file.isDirectory()) {
+                FileUtils.deleteAll(file);
+            } else {
+                FileUtils.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Writes the new journal with current entries only, and replaces the old one.
+     * */
+    private void rebuildJournal() throws IOException {
+        if (mJournal != null) mJournal.close();
+        final File tmp = new File(mDir, JOURNAL_TMP);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), CHARSET))) {
+            writer.write(JOURNAL_HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(OP_PUT + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        }
+        if (!tmp.renameTo(new File(mDir, JOURNAL))) {
+            throw new IOException("Cannot write journal in " + mDir);
+        }
+        mJournal = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(mDir, JOURNAL), true), CHARSET));
+        mRedundant = 0;
+    }
+
+    /**
+     * Appends the record to the journal. The journal is flushed, so the record survives
+     * the process death.
+     * */
+    private void writeJournal(String op, String key, long size) throws IOException {
+        checkOpen();
+        mJournal.write(op);
+        mJournal.write(' ');
+        mJournal.write(key);
+        if (size >= 0) mJournal.write(" " + size);
+        mJournal.write('\n');
+        mJournal.flush();
+    }
+
+    /**
+     * @return The stream to read the entry with specified key, or null if there is no such
+     * entry. The large entries are read via memory-mapped file.
+     * @throws IOException If the entry cannot be read.
+     * */
+    public InputStream get(String key) throws IOException {
+        final ByteBuffer buffer = getBuffer(key);
+        if (buffer == null) return null;
+        return buffer.hasArray() ? new ByteArrayInputStream(buffer.array(),
+                buffer.arrayOffset(), buffer.remaining()) : new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * @return The content of the entry with specified key, or null if there is no such
+     * entry. The large entries ({@link #MMAP_THRESHOLD} and more) are memory-mapped
+     * read-only, the small ones are read to heap.
+     * @throws IOException If the entry cannot be read.
+     * */
+    public ByteBuffer getBuffer(String key) throws IOException {
+        checkKey(key);
+        synchronized (this) {
+            if (mEntries.get(key) == null) return null; // Also moves the entry to the end
+            writeJournal(OP_GET, key, -1);
+            mRedundant++;
+            if (isJournalRedundant()) scheduleCleanup();
+        }
+        final File file = new File(mDir, key);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size >= MMAP_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) { /* Read all */ }
+            buffer.flip();
+            return buffer;
+        } catch (FileNotFoundException e) {
+            // The file has been removed by system or by eviction
+            synchronized (this) {
+                final Long size = mEntries.get(key);
+                if (size != null && !file.exists()) {
+                    mEntries.remove(key);
+                    mSize -= size;
+                    writeJournal(OP_DEL, key, -1);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return The content of the entry with specified key, or null if there is no such
+     * entry.
+     * @throws IOException If the entry cannot be read.
+     * */
+    public byte[] getBytes(String key) throws IOException {
+        final ByteBuffer buffer = getBuffer(key);
+        if (buffer == null) return null;
+        if (buffer.hasArray() && buffer.arrayOffset() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return True, if the cache contains the entry with specified key.
+     * */
+    public synchronized boolean contains(String key) {
+        return key != null && mEntries.containsKey(key);
+    }
+
+    /**
+     * Writes the entry with specified key, the existing entry is replaced.
+     * @throws IOException If the entry cannot be written.
+     * */
+    public void put(String key, byte[] data) throws IOException {
+        put(key, new ByteArrayInputStream(data != null ? data : new byte[0]));
+    }
+
+    /**
+     * Writes the content of specified stream as the entry with specified key, the existing
+     * entry is replaced. The stream is not closed.
+     * @throws IOException If the entry cannot be written.
+     * */
+    public void put(String key, InputStream in) throws IOException {
+        checkKey(key);
+        checkOpen();
+        final File tmp = new File(mDir, key + StrUtils.CHAR_DOT + sTmpCount.incrementAndGet()
+                + TMP_SUFFIX);
+        final long size;
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            size = FileUtils.copy(in, out, FileUtils.DEFAULT_BUFFER_SIZE);
+        } catch (IOException e) {
+            FileUtils.delete(tmp);
+            throw e;
+        }
+        synchronized (this) {
+            if (!tmp.renameTo(new File(mDir, key))) {
+                FileUtils.delete(tmp);
+                throw new IOException("Cannot write entry " + key);
+            }
+            final Long old = mEntries.put(key, size);
+            if (old != null) {
+                mSize -= old;
+                mRedundant++;
+            }
+            mSize += size;
+            writeJournal(OP_PUT, key, size);
+            if (mSize > mMaxSize || isJournalRedundant()) scheduleCleanup();
+        }
+    }
+
+    /**
+     * Removes the entry with specified key.
+     * @return True, if the entry has been removed.
+     * @throws IOException If the journal cannot be written.
+     * */
+    public synchronized boolean remove(String key) throws IOException {
+        checkKey(key);
+        final Long size = mEntries.remove(key);
+        if (size == null) return false;
+        FileUtils.delete(new File(mDir, key));
+        mSize -= size;
+        mRedundant += 2;
+        writeJournal(OP_DEL, key, -1);
+        if (isJournalRedundant()) scheduleCleanup();
+        return true;
+    }
+
+    /**
+     * Removes all entries.
+     * @throws IOException If the journal cannot be written.
+     * */
+    public synchronized void clear() throws IOException {
+        checkOpen();
+        final Set<String> keys = new HashSet<>(mEntries.keySet());
+        for (String key : keys) FileUtils.delete(new File(mDir, key));
+        mEntries.clear();
+        mSize = 0;
+        rebuildJournal();
+    }
+
+    /**
+     * @return The current size of the cache, in bytes.
+     * */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * @return The number of entries.
+     * */
+    public synchronized int count() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return The max size of the cache, in bytes.
+     * */
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Sets the max size of the cache, in bytes. If the cache is larger, the least recently
+     * used entries are removed in background.
+     * */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("The size must be positive");
+        mMaxSize = maxSize;
+        if (mSize > mMaxSize) scheduleCleanup();
+    }
+
+    /**
+     * @return The cache directory.
+     * */
+    public File getDirectory() {
+        return mDir;
+    }
+
+    /**
+     * Closes the journal, the cache cannot be used after that.
+     * */
+    @Override
+    public synchronized void close() throws IOException {
+        if (mJournal == null) return;
+        mExecutor.shutdown();
+        mJournal.close();
+        mJournal = null;
+    }
+
+    /**
+     * Schedules the background removing of least recently used entries, and compacting
+     * of the journal.
+     * */
+    private void scheduleCleanup() {
+        if (mCleanup || mJournal == null) return;
+        mCleanup = true;
+        mExecutor.execute(this::cleanup);
+    }
+
+    /**
+     * Removes least recently used entries, while the cache is larger than the limit, and
+     * compacts the journal, if it has too many redundant records.
+     * */
+    private synchronized void cleanup() {
+        mCleanup = false;
+        if (mJournal == null) return;
+        try {
+            final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+            while (mSize > mMaxSize && iterator.hasNext()) {
+                final Map.Entry<String, Long> eldest = iterator.next();
+                iterator.remove();
+                FileUtils.delete(new File(mDir, eldest.getKey()));
+                mSize -= eldest.getValue();
+                mRedundant += 2;
+                writeJournal(OP_DEL, eldest.getKey(), -1);
+            }
+            if (isJournalRedundant()) rebuildJournal();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot clean up " + mDir, e);
+        }
+    }
+
+    /**
+     * @return True, if the journal has too many redundant records, and it should be
+     * compacted.
+     * */
+    private boolean isJournalRedundant() {
+        return mRedundant >= MAX_REDUNDANT && mRedundant >= mEntries.size();
+    }
+
+    /**
+     * @throws IllegalStateException If the cache is closed.
+     * */
+    private synchronized void checkOpen() {
+        if (mJournal == null) throw new IllegalStateException("The cache is closed");
+    }
+
+    /**
+     * @throws IllegalArgumentException If specified key is not valid: it should contain
+     * only {@code [a-z0-9_-]}, from 1 to 120 characters.
+     * */
+    private static void checkKey(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+}
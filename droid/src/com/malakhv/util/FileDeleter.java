@@ -0,0 +1,296 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes directory trees. The directories are processed in parallel, by fork/join pool:
+ * each task removes the files of one directory as a batch, and forks tasks for its
+ * subdirectories. Symbolic links are removed, but never followed.
+ * <pre>
+ *     FileDeleter.Stats stats = new FileDeleter().delete(cacheDir);
+ *     new FileDeleter().deleteAsync(cacheDir, stats -&gt; Log.d(TAG, "Removed: " + stats));
+ * </pre>
+ * @see FileUtils#deleteAll(File)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FileDeleter {
+
+    /** The tag for LogCat. */
+    private static final String TAG = FileDeleter.class.getSimpleName();
+
+    /**
+     * The listener of asynchronous removing.
+     * */
+    public interface Listener {
+        /**
+         * Called from a background thread, when the removing is finished.
+         * */
+        void onFinish(Stats stats);
+    }
+
+    /**
+     * The summary of removing.
+     * */
+    public static final class Stats {
+
+        /** The number of removed files. */
+        final AtomicLong mFiles = new AtomicLong();
+
+        /** The number of removed directories. */
+        final AtomicLong mDirs = new AtomicLong();
+
+        /** The size of removed files, in bytes. */
+        final AtomicLong mBytes = new AtomicLong();
+
+        /** The number of files and directories which cannot be removed. */
+        final AtomicLong mFailures = new AtomicLong();
+
+        /**
+         * @return The number of removed files.
+         * */
+        public long getFiles() {
+            return mFiles.get();
+        }
+
+        /**
+         * @return The number of removed directories.
+         * */
+        public long getDirectories() {
+            return mDirs.get();
+        }
+
+        /**
+         * @return The size of removed files, in bytes.
+         * */
+        public long getBytes() {
+            return mBytes.get();
+        }
+
+        /**
+         * @return The number of files and directories which cannot be removed.
+         * */
+        public long getFailures() {
+            return mFailures.get();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return "Stats{files=" + getFiles() + ", dirs=" + getDirectories() + ", bytes="
+                    + getBytes() + ", failures=" + getFailures() + "}";
+        }
+    }
+
+    /** The number of threads, 1 to remove in the caller thread. */
+    private int mParallelism = FileWalker.DEFAULT_PARALLELISM;
+
+    /**
+     * Sets the number of threads, 1 to remove in the caller thread.
+     * */
+    public FileDeleter setParallelism(int parallelism) {
+        mParallelism = Math.max(parallelism, 1);
+        return this;
+    }
+
+    /**
+     * Removes specified {@code file}. If it is a directory, all files into it will be
+     * removed. This method returns when all files have been processed.
+     * @return The summary of removing.
+     * */
+    public Stats delete(File file) {
+        final Stats stats = new Stats();
+        if (file == null) return stats;
+        if (mParallelism == 1) {
+            new DeleteTask(file, true, stats).compute();
+        } else if (mParallelism == FileWalker.DEFAULT_PARALLELISM) {
+            FileWalker.getPool().invoke(new DeleteTask(file, true, stats));
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(mParallelism);
+            try {
+                pool.invoke(new DeleteTask(file, true, stats));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Removes specified {@code file} in background, by the shared pool.
+     * @param listener The listener to receive the summary, or null.
+     * @return The future result of removing.
+     * @see #delete(File)
+     * */
+    public Future<Stats> deleteAsync(final File file, final Listener listener) {
+        final ForkJoinTask<Stats> task = new RecursiveTask<Stats>() {
+            @Override
+            protected Stats compute() {
+                final Stats stats = new Stats();
+                if (file != null) new DeleteTask(file, true, stats).compute();
+                if (listener != null) listener.onFinish(stats);
+                return stats;
+            }
+        };
+        return FileWalker.getPool().submit(task);
+    }
+
+    /**
+     * The task to remove one file or directory, the subdirectories are removed by forked
+     * tasks.
+     * */
+    @SuppressWarnings("serial")
+    private static final class DeleteTask extends RecursiveAction {
+
+        /** The file or directory. */
+        private final File mFile;
+
+        /** True, if the type of the file is unknown yet. */
+        private final boolean mRoot;
+
+        /** The summary. */
+        private final Stats mStats;
+
+        /**
+         * Construct a new {@link DeleteTask} instance with specified parameters.
+         * */
+        DeleteTask(File file, boolean root, Stats stats) {
+            mFile = file; mRoot = root; mStats = stats;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+            final List<File> dirs = new ArrayList<>();
+            final boolean isDir;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                isDir = listPaths(dirs);
+            } else {
+                isDir = listFiles(dirs);
+            }
+            if (!isDir) return;
+            if (!dirs.isEmpty()) {
+                final List<DeleteTask> tasks = new ArrayList<>(dirs.size());
+                for (File dir : dirs) tasks.add(new DeleteTask(dir, false, mStats));
+                if (inForkJoinPool()) {
+                    invokeAll(tasks);
+                } else {
+                    for (DeleteTask task : tasks) task.compute();
+                }
+            }
+            if (mFile.delete()) {
+                mStats.mDirs.incrementAndGet();
+            } else if (mFile.exists()) {
+                mStats.mFailures.incrementAndGet();
+            }
+        }
+
+        /**
+         * Removes the files of the directory, and adds its subdirectories to {@code dirs}.
+         * @return True, if the file is a directory to remove after its subdirectories.
+         * */
+        @TargetApi(Build.VERSION_CODES.O)
+        private boolean listPaths(List<File> dirs) {
+            final Path dir = mFile.toPath();
+            if (mRoot) {
+                try {
+                    // The root can be a symbolic link (even dangling), it is not followed
+                    final BasicFileAttributes attrs = Files.readAttributes(dir,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (!attrs.isDirectory()) {
+                        deleteFile(mFile, attrs.isRegularFile() ? attrs.size() : 0);
+                        return false;
+                    }
+                } catch (IOException e) {
+                    return false; // Not exists
+                }
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    final BasicFileAttributes attrs = Files.readAttributes(path,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        dirs.add(path.toFile());
+                    } else {
+                        deleteFile(path.toFile(), attrs.isRegularFile() ? attrs.size() : 0);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Cannot list " + mFile, e);
+            }
+            return true;
+        }
+
+        /**
+         * Removes the files of the directory, and adds its subdirectories to {@code dirs},
+         * by {@link File} API.
+         * @return True, if the file is a directory to remove after its subdirectories.
+         * */
+        private boolean listFiles(List<File> dirs) {
+            final File[] files = mFile.listFiles();
+            if (files == null || (mRoot && FileUtils.isLink(mFile))) {
+                // Not a directory, or a link to directory
+                if (mRoot) deleteFile(mFile, mFile.length());
+                return false;
+            }
+            for (File file : files) {
+                if (!file.isDirectory()) {
+                    deleteFile(file, file.length());
+                } else if (FileUtils.isLink(file)) {
+                    deleteFile(file, 0);
+                } else {
+                    dirs.add(file);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes specified file (not a directory), and updates the summary.
+         * */
+        private void deleteFile(File file, long size) {
+            if (file.delete()) {
+                mStats.mFiles.incrementAndGet();
+                mStats.mBytes.addAndGet(size);
+            } else if (file.exists()) {
+                mStats.mFailures.incrementAndGet();
+            }
+        }
+    }
+}
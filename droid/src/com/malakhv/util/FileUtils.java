@@ -18,11 +18,21 @@
 
 package com.malakhv.util;
 
+import android.os.Build;
+import android.util.Log;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,30 +49,132 @@ public final class FileUtils {
     /** The default buffer size for stream operations. */
     static final int DEFAULT_BUFFER_SIZE = 8192;
 
+    /** The max number of bytes to transfer between channels by one call. */
+    private static final long MAX_TRANSFER_SIZE = 8L * 1024 * 1024;
+
     /**
      * Copy {@code in} stream to {@code out} stream.
+     * @see #copy(InputStream, OutputStream, int)
      * */
     public static void copy(InputStream in, OutputStream out) throws IOException {
-        if (in == null || out == null) return;
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int read;
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
+        copy(in, out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Copy {@code in} stream to {@code out} stream with buffer of specified size. If both
+     * streams are plain file streams of a regular file, the data is transferred between
+     * their channels directly (without copying to Java heap), otherwise, and for the rest
+     * of data, which cannot be transferred, the pooled buffer is used.
+     * @return The number of copied bytes.
+     * */
+    public static long copy(InputStream in, OutputStream out, int bufferSize)
+            throws IOException {
+        if (in == null || out == null) return 0;
+        long count = 0;
+        // Subclasses (for example, asset streams) may limit the data, so only exact classes
+        if (in.getClass() == FileInputStream.class && out.getClass() == FileOutputStream.class) {
+            count = transfer(((FileInputStream) in).getChannel(),
+                    ((FileOutputStream) out).getChannel());
+        }
+        final byte[] buffer = BufferPool.acquire(bufferSize > 0 ? bufferSize
+                : DEFAULT_BUFFER_SIZE);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                count += read;
+            }
+            return count;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Copy {@code src} file to {@code dst} file, the existing {@code dst} file is replaced.
+     * The data is transferred between file channels directly, so the kernel can copy it
+     * without going through user space.
+     * @return The number of copied bytes.
+     * @see #copy(InputStream, OutputStream, int)
+     * */
+    public static long copy(File src, File dst) throws IOException {
+        try (FileInputStream in = new FileInputStream(src);
+             FileOutputStream out = new FileOutputStream(dst)) {
+            return copy(in, out, DEFAULT_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Copy all data from {@code in} channel to {@code out} channel.
+     * @see #copy(ReadableByteChannel, WritableByteChannel, int)
+     * */
+    public static long copy(ReadableByteChannel in, WritableByteChannel out)
+            throws IOException {
+        return copy(in, out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Copy all data from {@code in} channel to {@code out} channel. If {@code in} is
+     * a {@link FileChannel} of a regular file, the data is transferred directly, otherwise,
+     * and for the rest of data, which cannot be transferred, the pooled direct buffer of
+     * specified size is used.
+     * @return The number of copied bytes.
+     * */
+    public static long copy(ReadableByteChannel in, WritableByteChannel out, int bufferSize)
+            throws IOException {
+        if (in == null || out == null) return 0;
+        long count = in instanceof FileChannel ? transfer((FileChannel) in, out) : 0;
+        final int size = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+        final ByteBuffer buffer = BufferPool.acquireDirect(size);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) out.write(buffer);
+                buffer.clear().limit(size);
+                count += read;
+            }
+            return count;
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Transfers the data from current position of {@code src} channel to its size to
+     * {@code dst} channel, and moves the position of {@code src} after transferred data.
+     * The data is transferred by parts, because one
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)} call may transfer
+     * less bytes than requested. The special files (procfs, pipes) have zero size, or they
+     * may be not supported by {@code transferTo}, so the caller should copy the rest of
+     * data, if any, in usual way.
+     * @return The number of transferred bytes.
+     * */
+    private static long transfer(FileChannel src, WritableByteChannel dst) throws IOException {
+        final long position = src.position();
+        final long count = src.size() - position;
+        if (count <= 0) return 0;
+        long done = 0;
+        while (done < count) {
+            final long n = src.transferTo(position + done,
+                    Math.min(count - done, MAX_TRANSFER_SIZE), dst);
+            if (n <= 0) break;
+            done += n;
         }
+        src.position(position + done);
+        return done;
     }
 
     /**
      * Removes specified {@code file}. If specified {@code file} is a directory, all files into
-     * it will be removed.
+     * it will be removed, in parallel. Symbolic links are removed, but not followed.
+     * @see FileDeleter
      * */
     public static void deleteAll(File file) {
-        if (file == null || !file.exists()) return;
-        if (file.isDirectory()) {
-            File[] all = file.listFiles();
-            if (all == null) return;
-            for (File f : all) deleteAll(f);
-        }
-        delete(file);
+        if (file == null) return;
+        final FileDeleter.Stats stats = new FileDeleter().delete(file);
+        if (stats.getFailures() > 0) Log.w(TAG, "Cannot remove all files in " + file + ", "
+                + stats);
     }
 
     /**
@@ -74,32 +186,36 @@ public final class FileUtils {
     }
 
     /**
-     * @return The list of files matches by {@code filter} from specified directory
-     * and all subdirectories.
+     * @return True, if specified file is a symbolic link. Below O, there is no NIO, so the
+     * link is detected by its canonical path, which differs from its path in the canonical
+     * parent directory.
      * */
-    public static List<File> listFiles(File file, FilenameFilter filter) {
-        List<File> outFiles = new ArrayList<>();
-        findFiles(file, filter, outFiles);
-        return outFiles;
+    public static boolean isLink(File file) {
+        if (file == null) return false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return Files.isSymbolicLink(file.toPath());
+        }
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent == null) return false;
+            final File path = new File(parent.getCanonicalFile(), file.getName());
+            return !path.getCanonicalFile().equals(path.getAbsoluteFile());
+        } catch (IOException e) {
+            return false;
+        }
     }
 
     /**
-     * Implements recursive search.
+     * @return The list of files matches by {@code filter} from specified directory
+     * and all subdirectories, in no particular order. The filter receives the real parent
+     * directory of each file.
+     * @see FileWalker
      * */
-    private static void findFiles(File file, FilenameFilter filter, List<File> outFiles) {
-        if (!file.isDirectory()) {
-            if (filter != null) {
-                if (filter.accept(null, file.getName())) outFiles.add(file);
-            } else {
-                outFiles.add(file);
-            }
-            return;
-        }
-        File[] files = file.listFiles();
-        if (files == null || files.length <= 0) return;
-        for (File f: files) {
-            findFiles(f, filter, outFiles);
-        }
+    public static List<File> listFiles(File file, final FilenameFilter filter) {
+        if (file == null) return new ArrayList<>();
+        final FileWalker walker = new FileWalker();
+        if (filter != null) walker.setFilter(f -> filter.accept(f.getParentFile(), f.getName()));
+        return walker.list(file);
     }
 
     /**
@@ -0,0 +1,396 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * The recursive directory walker. The directories are listed in parallel, by fork/join
+ * pool, and the matched files are passed to a callback as soon as they are found, so there
+ * is no need to keep all files in memory. Symbolic links to directories are never
+ * followed, they are passed to the callback as files.
+ * <pre>
+ *     long count = new FileWalker().setGlob("**&#47;*.png").setMaxDepth(3)
+ *             .walk(cacheDir, file -&gt; { ...; return true; });
+ * </pre>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class FileWalker {
+
+    /** The tag for LogCat. */
+    private static final String TAG = FileWalker.class.getSimpleName();
+
+    /** The default number of threads to walk. */
+    public static final int DEFAULT_PARALLELISM = Math.max(2,
+            Runtime.getRuntime().availableProcessors());
+
+    /** The shared pool with {@link #DEFAULT_PARALLELISM} threads, it is created lazily. */
+    private static ForkJoinPool sPool = null;
+
+    /**
+     * The filter of files and directories.
+     * */
+    public interface Filter {
+        /**
+         * @return True, if specified file (with full path) is accepted.
+         * */
+        boolean accept(File file);
+    }
+
+    /**
+     * The callback to receive found files. It is called from several threads at once, if
+     * the walk is parallel.
+     * */
+    public interface Callback {
+        /**
+         * Called for each file found.
+         * @return True to continue, or false to stop the walk.
+         * */
+        boolean onFile(File file);
+    }
+
+    /** The max depth of files to walk, the children of the root have depth 1. */
+    private int mMaxDepth = Integer.MAX_VALUE;
+
+    /** The filter of files, or null. */
+    private Filter mFilter = null;
+
+    /** The filter of directories to walk into, or null. */
+    private Filter mDirFilter = null;
+
+    /** The glob pattern of files, or null. */
+    private Pattern mGlob = null;
+
+    /** True, if the glob pattern has to match the relative path (not only name). */
+    private boolean mGlobPath = false;
+
+    /** The number of threads to walk, 1 to walk in the caller thread. */
+    private int mParallelism = DEFAULT_PARALLELISM;
+
+    /**
+     * Sets the max depth of files to walk: 1 for the children of the root only, and so on.
+     * By default, there is no limit.
+     * */
+    public FileWalker setMaxDepth(int depth) {
+        mMaxDepth = depth > 0 ? depth : Integer.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Sets the filter of files. The filter is called from several threads at once, if
+     * the walk is parallel.
+     * */
+    public FileWalker setFilter(Filter filter) {
+        mFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets the filter of directories, the directories which are not accepted are skipped
+     * with all their content.
+     * */
+    public FileWalker setDirectoryFilter(Filter filter) {
+        mDirFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets the glob pattern of files, in addition to {@link #setFilter(Filter)}. If the
+     * pattern contains {@code /}, it matches the path relative to the root, otherwise it
+     * matches the file name. The pattern supports {@code *}, {@code **} (any number of
+     * directories), {@code ?}, {@code [...]} and {@code {a,b}}.
+     * */
+    public FileWalker setGlob(String glob) {
+        mGlob = StrUtils.isEmpty(glob) ? null : Pattern.compile(toRegex(glob));
+        mGlobPath = glob != null && glob.indexOf('/') >= 0;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads to walk, 1 to walk in the caller thread.
+     * */
+    public FileWalker setParallelism(int parallelism) {
+        mParallelism = Math.max(parallelism, 1);
+        return this;
+    }
+
+    /**
+     * Walks the {@code root} directory, and passes all matched files to the callback. This
+     * method returns when the walk is finished or stopped by the callback.
+     * @return The number of matched files.
+     * */
+    public long walk(File root, Callback callback) {
+        if (root == null || callback == null || !root.exists()) return 0;
+        final Walk walk = new Walk(root, callback);
+        if (!root.isDirectory()) {
+            walk.onFile(root);
+        } else if (mParallelism == 1) {
+            walk.visit(root, 0);
+        } else if (mParallelism == DEFAULT_PARALLELISM) {
+            getPool().invoke(new DirTask(walk, root, 0));
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(mParallelism);
+            try {
+                pool.invoke(new DirTask(walk, root, 0));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return walk.mCount.get();
+    }
+
+    /**
+     * @return The list of all matched files in {@code root} directory, in no particular
+     * order. For large trees, {@link #walk(File, Callback)} should be used.
+     * */
+    public List<File> list(File root) {
+        final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+        walk(root, files::add);
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * @return The shared pool with {@link #DEFAULT_PARALLELISM} threads, it is used by all
+     * file utilities of this package.
+     * */
+    static synchronized ForkJoinPool getPool() {
+        if (sPool == null) sPool = new ForkJoinPool(DEFAULT_PARALLELISM);
+        return sPool;
+    }
+
+    /**
+     * @return The regular expression for specified glob pattern.
+     * */
+    static String toRegex(String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() * 2);
+        boolean group = false;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        final boolean dir = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+                        regex.append(dir ? "(?:.*/)?" : ".*");
+                        i += dir ? 2 : 1;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?': regex.append("[^/]"); break;
+                case '{': regex.append("(?:"); group = true; break;
+                case '}': regex.append(group ? ")" : "\\}"); group = false; break;
+                case ',': regex.append(group ? "|" : ","); break;
+                case '[':
+                    final int end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        regex.append("\\[");
+                    } else {
+                        String set = glob.substring(i + 1, end).replace("\\", "\\\\");
+                        if (set.startsWith("!")) set = "^" + set.substring(1);
+                        regex.append('[').append(set).append(']');
+                        i = end;
+                    }
+                    break;
+                default:
+                    if ("\\.^$+()|]".indexOf(c) >= 0) regex.append('\\');
+                    regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * The state of one walk.
+     * */
+    private final class Walk {
+
+        /** The root directory path, with separator at the end. */
+        private final String mRoot;
+
+        /** The callback. */
+        private final Callback mCallback;
+
+        /** The number of matched files. */
+        final AtomicLong mCount = new AtomicLong();
+
+        /** The visited directories (canonical paths), to detect cycles without NIO. */
+        private final Set<String> mVisited = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+
+        /** True, if the walk has been stopped by the callback. */
+        volatile boolean mStopped = false;
+
+        /**
+         * Construct a new {@link Walk} instance with specified parameters.
+         * */
+        Walk(File root, Callback callback) {
+            final String path = root.getPath();
+            mRoot = path.endsWith(File.separator) ? path : path + File.separator;
+            mCallback = callback;
+        }
+
+        /**
+         * Walks specified directory in current thread.
+         * */
+        void visit(File dir, int depth) {
+            final List<File> dirs = new ArrayList<>();
+            list(dir, depth, dirs);
+            for (File child : dirs) {
+                if (mStopped) return;
+                visit(child, depth + 1);
+            }
+        }
+
+        /**
+         * Lists specified directory: passes its files to the callback, and adds its
+         * directories to walk to {@code dirs}.
+         * */
+        void list(File dir, int depth, List<File> dirs) {
+            if (mStopped) return;
+            final boolean walkDirs = depth + 1 < mMaxDepth;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                listPaths(dir, walkDirs, dirs);
+                return;
+            }
+            if (depth == 0) addVisited(dir);
+            final File[] files = dir.listFiles();
+            if (files == null) return;
+            for (File file : files) {
+                if (mStopped) return;
+                // The links to directories are files, as in NIO listing
+                if (!file.isDirectory() || FileUtils.isLink(file)) {
+                    onFile(file);
+                } else if (walkDirs && acceptDir(file) && addVisited(file)) {
+                    dirs.add(file);
+                }
+            }
+        }
+
+        /**
+         * Lists specified directory by NIO: the file attributes are read with the directory
+         * entry, without following links.
+         * */
+        @TargetApi(Build.VERSION_CODES.O)
+        private void listPaths(File dir, boolean walkDirs, List<File> dirs) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                for (Path path : stream) {
+                    if (mStopped) return;
+                    final BasicFileAttributes attrs = Files.readAttributes(path,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    final File file = path.toFile();
+                    if (!attrs.isDirectory()) {
+                        onFile(file);
+                    } else if (walkDirs && acceptDir(file)) {
+                        dirs.add(file);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Cannot list " + dir, e);
+            }
+        }
+
+        /**
+         * @return True, if specified directory has not been visited yet.
+         * */
+        private boolean addVisited(File dir) {
+            try {
+                return mVisited.add(dir.getCanonicalPath());
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return True, if specified directory should be walked.
+         * */
+        private boolean acceptDir(File dir) {
+            return mDirFilter == null || mDirFilter.accept(dir);
+        }
+
+        /**
+         * Passes specified file to the callback, if it is matched.
+         * */
+        void onFile(File file) {
+            if (mGlob != null) {
+                final String path = file.getPath();
+                final String name = !mGlobPath ? file.getName() : path.startsWith(mRoot)
+                        ? path.substring(mRoot.length()).replace(File.separatorChar, '/')
+                        : path;
+                if (!mGlob.matcher(name).matches()) return;
+            }
+            if (mFilter != null && !mFilter.accept(file)) return;
+            mCount.incrementAndGet();
+            if (!mCallback.onFile(file)) mStopped = true;
+        }
+    }
+
+    /**
+     * The task to walk one directory, the subdirectories are walked by forked tasks.
+     * */
+    @SuppressWarnings("serial")
+    private static final class DirTask extends RecursiveAction {
+
+        /** The walk. */
+        private final Walk mWalk;
+
+        /** The directory. */
+        private final File mDir;
+
+        /** The depth of the directory. */
+        private final int mDepth;
+
+        /**
+         * Construct a new {@link DirTask} instance with specified parameters.
+         * */
+        DirTask(Walk walk, File dir, int depth) {
+            mWalk = walk; mDir = dir; mDepth = depth;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void compute() {
+            final List<File> dirs = new ArrayList<>();
+            mWalk.list(mDir, mDepth, dirs);
+            if (dirs.isEmpty() || mWalk.mStopped) return;
+            final List<DirTask> tasks = new ArrayList<>(dirs.size());
+            for (File dir : dirs) tasks.add(new DirTask(mWalk, dir, mDepth + 1));
+            invokeAll(tasks);
+        }
+    }
+}
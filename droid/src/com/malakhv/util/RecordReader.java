@@ -0,0 +1,314 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the text by records (for example, lines), which are separated by a delimiter. Each
+ * record is returned as {@link CharSequence} view over the internal buffer, which is reused,
+ * so the whole text is never kept in memory, and there is no copying for each record. The
+ * view is valid until the next record is read; to keep it, call {@code toString()}.
+ * <pre>
+ *     try (RecordReader reader = StreamUtils.lines(process.getInputStream(), null)) {
+ *         CharSequence line;
+ *         while ((line = reader.next()) != null) { ... }
+ *     }
+ * </pre>
+ * @see StreamUtils#lines(java.io.InputStream, java.nio.charset.Charset)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class RecordReader implements Closeable {
+
+    /** The tag for LogCat. */
+    private static final String TAG = RecordReader.class.getSimpleName();
+
+    /** The default max size of a record, in characters. */
+    public static final int DEFAULT_MAX_RECORD_SIZE = 1024 * 1024;
+
+    /** The initial buffer size, in characters. */
+    private static final int BUFFER_SIZE = FileUtils.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The delimiter of records.
+     * */
+    public interface Delimiter {
+        /**
+         * Checks whether the delimiter starts at specified position.
+         * @param buffer The buffer with text.
+         * @param pos The position to check.
+         * @param end The end of the text in the buffer.
+         * @param eof True, if there is no text after {@code end}.
+         * @return The length of the delimiter at {@code pos}, 0 if there is no delimiter,
+         * or -1 if more text is needed to decide (only when {@code eof} is false).
+         * */
+        int match(char[] buffer, int pos, int end, boolean eof);
+    }
+
+    /** The line delimiter: {@code \n}, {@code \r\n} or {@code \r}. */
+    public static final Delimiter LINE = (buffer, pos, end, eof) -> {
+        final char c = buffer[pos];
+        if (c == '\n') return 1;
+        if (c != '\r') return 0;
+        if (pos + 1 < end) return buffer[pos + 1] == '\n' ? 2 : 1;
+        return eof ? 1 : -1;
+    };
+
+    /**
+     * @return The delimiter which is specified character.
+     * */
+    public static Delimiter of(final char delimiter) {
+        return (buffer, pos, end, eof) -> buffer[pos] == delimiter ? 1 : 0;
+    }
+
+    /**
+     * @return The delimiter which is specified sequence of characters.
+     * @throws IllegalArgumentException If the sequence is empty.
+     * */
+    public static Delimiter of(String delimiter) {
+        if (delimiter == null || delimiter.isEmpty()) {
+            throw new IllegalArgumentException("Empty delimiter");
+        }
+        if (delimiter.length() == 1) return of(delimiter.charAt(0));
+        final char[] chars = delimiter.toCharArray();
+        return (buffer, pos, end, eof) -> {
+            for (int i = 0; i < chars.length; i++) {
+                if (pos + i >= end) return eof ? 0 : -1;
+                if (buffer[pos + i] != chars[i]) return 0;
+            }
+            return chars.length;
+        };
+    }
+
+    /** The source of text. */
+    private final Reader mReader;
+
+    /** The reusable view of the current record. */
+    private final View mView = new View();
+
+    /** The delimiter of records. */
+    private Delimiter mDelimiter = LINE;
+
+    /** The max size of a record, in characters. */
+    private int mMaxRecordSize = DEFAULT_MAX_RECORD_SIZE;
+
+    /** The buffer. */
+    private char[] mBuffer = new char[BUFFER_SIZE];
+
+    /** The start of the text which has not been returned yet. */
+    private int mStart = 0;
+
+    /** The position to continue search of the delimiter. */
+    private int mScan = 0;
+
+    /** The end of the text in the buffer. */
+    private int mEnd = 0;
+
+    /** True, if the end of the source has been reached. */
+    private boolean mEof = false;
+
+    /**
+     * Construct a new {@link RecordReader} instance to read text from specified reader.
+     * The reader is buffered by this instance, so there is no need to wrap it.
+     * */
+    public RecordReader(Reader reader) {
+        if (reader == null) throw new IllegalArgumentException("The reader is null");
+        mReader = reader;
+    }
+
+    /**
+     * Sets the delimiter of records, by default, it is {@link #LINE}.
+     * */
+    public RecordReader setDelimiter(Delimiter delimiter) {
+        mDelimiter = delimiter != null ? delimiter : LINE;
+        return this;
+    }
+
+    /**
+     * Sets the max size of a record, in characters. The longer records are not read, see
+     * {@link #next()}.
+     * */
+    public RecordReader setMaxRecordSize(int size) {
+        mMaxRecordSize = size > 0 ? size : DEFAULT_MAX_RECORD_SIZE;
+        return this;
+    }
+
+    /**
+     * Reads the next record. The last record may have no delimiter at the end; the empty
+     * text after the last delimiter is not a record.
+     * @return The view of the record, it is valid until the next call of this method, or
+     * null at the end of the text.
+     * @throws IOException If the text cannot be read, or the record is longer than
+     * {@link #setMaxRecordSize(int)}.
+     * */
+    public CharSequence next() throws IOException {
+        while (true) {
+            // Search the delimiter in the text which has been read
+            int i = mScan;
+            for (; i < mEnd; i++) {
+                final int length = mDelimiter.match(mBuffer, i, mEnd, mEof);
+                if (length < 0) break;
+                if (length == 0) continue;
+                checkSize(i - mStart);
+                mView.set(mStart, i - mStart);
+                mStart = mScan = i + length;
+                return mView;
+            }
+            mScan = i;
+            checkSize(mScan - mStart);
+            if (mEof) {
+                if (mStart >= mEnd) return null;
+                mView.set(mStart, mEnd - mStart);
+                mStart = mScan = mEnd;
+                return mView;
+            }
+            fill();
+        }
+    }
+
+    /**
+     * Reads more text to the buffer: the returned records are dropped from the buffer, and
+     * it grows, if the current record doesn't fit.
+     * */
+    private void fill() throws IOException {
+        if (mStart > 0) {
+            System.arraycopy(mBuffer, mStart, mBuffer, 0, mEnd - mStart);
+            mEnd -= mStart;
+            mScan -= mStart;
+            mStart = 0;
+        }
+        if (mEnd == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, mBuffer.length * 2);
+        }
+        final int read = mReader.read(mBuffer, mEnd, mBuffer.length - mEnd);
+        if (read < 0) {
+            mEof = true;
+        } else {
+            mEnd += read;
+        }
+    }
+
+    /**
+     * @throws IOException If specified record size is larger than the limit.
+     * */
+    private void checkSize(int size) throws IOException {
+        if (size > mMaxRecordSize) {
+            throw new IOException("The record is longer than " + mMaxRecordSize);
+        }
+    }
+
+    /**
+     * @return The spliterator of records, as strings. The records are read by batches, so
+     * they can be processed in parallel. The I/O errors are thrown as
+     * {@link UncheckedIOException}.
+     * */
+    @TargetApi(Build.VERSION_CODES.N)
+    public Spliterator<String> spliterator() {
+        return new Spliterators.AbstractSpliterator<String>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                final CharSequence record;
+                try {
+                    record = next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (record == null) return false;
+                action.accept(record.toString());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @return The stream of records, as strings.
+     * @see #spliterator()
+     * */
+    @TargetApi(Build.VERSION_CODES.N)
+    public Stream<String> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * Closes the source of text.
+     * */
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * The view of a record in the buffer.
+     * */
+    private final class View implements CharSequence {
+
+        /** The start of the record. */
+        private int mOffset = 0;
+
+        /** The length of the record. */
+        private int mLength = 0;
+
+        /**
+         * Sets the record.
+         * */
+        void set(int offset, int length) {
+            mOffset = offset; mLength = length;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= mLength) throw new IndexOutOfBoundsException();
+            return mBuffer[mOffset + index];
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > mLength || start > end) throw new IndexOutOfBoundsException();
+            return new String(mBuffer, mOffset + start, end - start);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public String toString() {
+            return new String(mBuffer, mOffset, mLength);
+        }
+    }
+}
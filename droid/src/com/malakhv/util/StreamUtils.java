@@ -18,48 +18,154 @@
 
 package com.malakhv.util;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * Class contains some methods for working with {@link InputStream}.
  * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
  * */
+@SuppressWarnings({"unused", "WeakerAccess"})
 public final class StreamUtils {
 
+    /** The default charset to decode streams. */
+    public static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    /** The default buffer size to read streams. */
+    private static final int BUFFER_SIZE = FileUtils.DEFAULT_BUFFER_SIZE;
+
+    /** The max size of arrays, some VMs reserve header words in arrays. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     /**
-     * Convert {@link InputStream} to {@link String}.
+     * Convert {@link InputStream} to {@link String}, in {@link #DEFAULT_CHARSET}.
+     * @see #toStringOrThrow(InputStream, Charset, int, boolean)
      * */
     public static String toStringOrThrow(InputStream is, boolean doClose) throws IOException {
+        return toStringOrThrow(is, DEFAULT_CHARSET, 0, doClose);
+    }
+
+    /**
+     * Convert {@link InputStream} to {@link String}. The stream is read to the end, and its
+     * content is preserved exactly (including line separators).
+     * @param charset The charset of the stream, or null for {@link #DEFAULT_CHARSET}.
+     * @param sizeHint The expected number of characters, or 0 if it is unknown.
+     * @param doClose True, if the stream should be closed.
+     * */
+    public static String toStringOrThrow(InputStream is, Charset charset, int sizeHint,
+            boolean doClose) throws IOException {
         if (is == null) return null;
-        if (is.available() <= 0 ) return "";
-        StringBuilder sBuilder = new StringBuilder();
-        BufferedReader bReader = new BufferedReader(new InputStreamReader(is));
         try {
-            String str;
-            while ((str = bReader.readLine()) != null) {
-                sBuilder.append(str).append(StrUtils.CHAR_NEW_LINE);
-            }
+            final Reader reader = new InputStreamReader(is,
+                    charset != null ? charset : DEFAULT_CHARSET);
+            final StringBuilder builder = new StringBuilder(sizeHint > 0 ? sizeHint : 16);
+            final char[] buffer = new char[sizeHint > 0 ? Math.min(sizeHint + 1, BUFFER_SIZE)
+                    : BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) builder.append(buffer, 0, read);
+            return builder.toString();
         } finally {
-            bReader.close();
             if (doClose) is.close();
         }
-        return sBuilder.toString();
     }
 
     /**
-     * Convert {@link InputStream} to {@link String}.
+     * Convert {@link InputStream} to {@link String}, in {@link #DEFAULT_CHARSET}.
+     * @return The content of the stream, or null if it cannot be read.
      * */
     public static String toString(InputStream is, boolean doClose) {
+        return toString(is, DEFAULT_CHARSET, 0, doClose);
+    }
+
+    /**
+     * Convert {@link InputStream} to {@link String}.
+     * @return The content of the stream, or null if it cannot be read.
+     * @see #toStringOrThrow(InputStream, Charset, int, boolean)
+     * */
+    public static String toString(InputStream is, Charset charset, int sizeHint,
+            boolean doClose) {
         try {
-            return toStringOrThrow(is, doClose);
+            return toStringOrThrow(is, charset, sizeHint, doClose);
         } catch (IOException e) {
             return null;
         }
     }
 
+    /**
+     * Reads all bytes of {@link InputStream}. If the size hint is exact, the bytes are read
+     * directly to the returned array, without any copying.
+     * @param sizeHint The expected number of bytes, or 0 if it is unknown.
+     * @param doClose True, if the stream should be closed.
+     * */
+    public static byte[] toByteArray(InputStream is, int sizeHint, boolean doClose)
+            throws IOException {
+        if (is == null) return null;
+        final ByteBuffer buffer = toByteBuffer(is, sizeHint, doClose);
+        final byte[] array = buffer.array();
+        return buffer.remaining() == array.length ? array
+                : Arrays.copyOf(array, buffer.remaining());
+    }
+
+    /**
+     * Reads all bytes of {@link InputStream} to heap {@link ByteBuffer}, the bytes are read
+     * directly to the backing array of the buffer, which is not trimmed, so there is no
+     * copying at all.
+     * @param sizeHint The expected number of bytes, or 0 if it is unknown.
+     * @param doClose True, if the stream should be closed.
+     * */
+    public static ByteBuffer toByteBuffer(InputStream is, int sizeHint, boolean doClose)
+            throws IOException {
+        if (is == null) return null;
+        try {
+            byte[] buffer = new byte[sizeHint > 0 ? Math.min(sizeHint, MAX_ARRAY_SIZE)
+                    : BUFFER_SIZE];
+            int count = 0;
+            while (true) {
+                final int read = is.read(buffer, count, buffer.length - count);
+                if (read == -1) break;
+                count += read;
+                if (count < buffer.length) continue;
+                // The buffer is full: check the end of stream before growing
+                final int next = is.read();
+                if (next == -1) break;
+                if (buffer.length == MAX_ARRAY_SIZE) throw new IOException("Too large stream");
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2,
+                        MAX_ARRAY_SIZE));
+                buffer[count++] = (byte) next;
+            }
+            return ByteBuffer.wrap(buffer, 0, count);
+        } finally {
+            if (doClose) is.close();
+        }
+    }
+
+    /**
+     * Creates {@link RecordReader} to read {@link InputStream} line by line, without keeping
+     * the whole text in memory. The reader should be closed, it closes the stream.
+     * @param charset The charset of the text, or null to use {@link #DEFAULT_CHARSET}.
+     * */
+    public static RecordReader lines(InputStream is, Charset charset) {
+        return records(is, charset, RecordReader.LINE);
+    }
+
+    /**
+     * Creates {@link RecordReader} to read {@link InputStream} by records, which are separated
+     * by specified delimiter, for example, {@code RecordReader.of(';')}.
+     * @param charset The charset of the text, or null to use {@link #DEFAULT_CHARSET}.
+     * */
+    public static RecordReader records(InputStream is, Charset charset,
+            RecordReader.Delimiter delimiter) {
+        if (is == null) throw new IllegalArgumentException("The stream is null");
+        return new RecordReader(new InputStreamReader(is,
+                charset != null ? charset : DEFAULT_CHARSET)).setDelimiter(delimiter);
+    }
+
     /**
      * This class has only static data, not need to create instance.
      * */
@@ -0,0 +1,457 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * The read-only virtual file system over a zip archive: the entries are read in place,
+ * without extraction. The central directory is indexed once, when the archive is opened.
+ * The stored (not compressed) entries are read from memory-mapped archive without copying,
+ * and the compressed ones are inflated on demand; the small inflated entries are kept in
+ * the LRU cache of limited size.
+ * <pre>
+ *     try (ZipArchive pack = ZipArchive.open(packFile)) {
+ *         for (String name : pack.list("tiles/12")) { ... }
+ *         ByteBuffer tile = pack.getBuffer("tiles/12/34.png");
+ *     }
+ * </pre>
+ * <p>The instance is thread-safe. ZIP64 archives are not supported.</p>
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ZipArchive implements Closeable {
+
+    /** The tag for LogCat. */
+    private static final String TAG = ZipArchive.class.getSimpleName();
+
+    /** The default size of the cache of inflated entries, in bytes. */
+    public static final int DEFAULT_CACHE_SIZE = 4 * 1024 * 1024;
+
+    /** The compression methods. */
+    private static final int METHOD_STORED = 0, METHOD_DEFLATED = 8;
+
+    /** The record signatures. */
+    private static final int SIG_LOCAL = 0x04034b50, SIG_CENTRAL = 0x02014b50,
+            SIG_END = 0x06054b50;
+
+    /** The sizes of records, without variable fields. */
+    private static final int LOCAL_SIZE = 30, CENTRAL_SIZE = 46, END_SIZE = 22;
+
+    /** The max length of archive comment. */
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    /** The archive file. */
+    private final RandomAccessFile mFile;
+
+    /** The archive file channel. */
+    private final FileChannel mChannel;
+
+    /** The memory-mapped archive, or null if it is too large to map at once. */
+    private final ByteBuffer mMap;
+
+    /** The file entries, by name. */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /** The names of children, by directory name (empty string for the root). */
+    private final Map<String, TreeSet<String>> mDirs = new HashMap<>();
+
+    /** The cache of inflated entries, by name, in access order. */
+    private final LinkedHashMap<String, byte[]> mCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The max size of the cache of inflated entries, in bytes. */
+    private int mCacheSize = DEFAULT_CACHE_SIZE;
+
+    /** The current size of the cache of inflated entries, in bytes. */
+    private int mCached = 0;
+
+    /**
+     * Construct a new {@link ZipArchive} instance with specified parameters.
+     * */
+    private ZipArchive(RandomAccessFile file, FileChannel channel, ByteBuffer map) {
+        mFile = file; mChannel = channel; mMap = map;
+    }
+
+    /**
+     * Opens specified zip file and reads its central directory.
+     * @throws ZipException If the file is not a zip archive.
+     * */
+    public static ZipArchive open(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            final ByteBuffer map = size <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            final ZipArchive archive = new ZipArchive(raf, channel, map);
+            archive.readCentralDirectory(size);
+            return archive;
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the central directory and builds the index of entries and directories.
+     * */
+    private void readCentralDirectory(long size) throws IOException {
+        // Find the end of central directory record, it is followed by a comment
+        final int tail = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+        final ByteBuffer end = read(size - tail, tail);
+        int pos = tail - END_SIZE;
+        while (pos >= 0 && end.getInt(pos) != SIG_END) pos--;
+        if (pos < 0) throw new ZipException("Not a zip archive");
+        final int count = end.getShort(pos + 10) & 0xFFFF;
+        final long cdSize = end.getInt(pos + 12) & 0xFFFFFFFFL;
+        final long cdOffset = end.getInt(pos + 16) & 0xFFFFFFFFL;
+        if (cdOffset + cdSize > size) throw new ZipException("Invalid central directory");
+
+        // Read entries
+        final ByteBuffer cd = read(cdOffset, (int) cdSize);
+        mDirs.put("", new TreeSet<String>());
+        pos = 0;
+        for (int i = 0; i < count; i++) {
+            if (pos + CENTRAL_SIZE > cd.limit() || cd.getInt(pos) != SIG_CENTRAL) {
+                throw new ZipException("Invalid central directory entry " + i);
+            }
+            final int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            final int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            final int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            final byte[] bytes = new byte[nameLength];
+            cd.position(pos + CENTRAL_SIZE);
+            cd.get(bytes);
+            final String name = normalize(new String(bytes, StandardCharsets.UTF_8));
+            final boolean isDir = bytes.length > 0 && bytes[bytes.length - 1] == '/';
+            if (!name.isEmpty()) {
+                addPath(name, isDir);
+                if (!isDir) {
+                    mEntries.put(name, new Entry(cd.getShort(pos + 10) & 0xFFFF,
+                            cd.getInt(pos + 20) & 0xFFFFFFFFL, cd.getInt(pos + 24) & 0xFFFFFFFFL,
+                            cd.getInt(pos + 42) & 0xFFFFFFFFL));
+                }
+            }
+            pos += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Adds specified path and all its parent directories to the index of directories.
+     * */
+    private void addPath(String path, boolean isDir) {
+        if (isDir && !mDirs.containsKey(path)) mDirs.put(path, new TreeSet<String>());
+        final int slash = path.lastIndexOf('/');
+        final String parent = slash > 0 ? path.substring(0, slash) : "";
+        TreeSet<String> children = mDirs.get(parent);
+        if (children == null) {
+            addPath(parent, true);
+            children = mDirs.get(parent);
+        }
+        children.add(path.substring(slash + 1));
+    }
+
+    /**
+     * @return The path without leading and trailing slashes.
+     * */
+    private static String normalize(String path) {
+        if (path == null) return "";
+        int start = 0, end = path.length();
+        while (start < end && path.charAt(start) == '/') start++;
+        while (end > start && path.charAt(end - 1) == '/') end--;
+        return path.substring(start, end);
+    }
+
+    /**
+     * @return True, if the archive contains specified file or directory.
+     * */
+    public boolean exists(String path) {
+        final String name = normalize(path);
+        return mEntries.containsKey(name) || mDirs.containsKey(name);
+    }
+
+    /**
+     * @return True, if specified path is a directory, explicit or implicit (a parent of
+     * any entry). The empty path is the root.
+     * */
+    public boolean isDirectory(String path) {
+        return mDirs.containsKey(normalize(path));
+    }
+
+    /**
+     * @return The names of files and directories in specified directory, in order of names,
+     * or null if there is no such directory.
+     * */
+    public String[] list(String dir) {
+        final TreeSet<String> children = mDirs.get(normalize(dir));
+        return children != null ? children.toArray(new String[0]) : null;
+    }
+
+    /**
+     * @return The paths of all files in the archive.
+     * */
+    public List<String> getFiles() {
+        return new ArrayList<>(mEntries.keySet());
+    }
+
+    /**
+     * @return The uncompressed size of specified file, or -1 if there is no such file.
+     * */
+    public long getSize(String path) {
+        final Entry entry = mEntries.get(normalize(path));
+        return entry != null ? entry.size : -1;
+    }
+
+    /**
+     * @return True, if specified file is stored without compression, so it is read
+     * without copying.
+     * */
+    public boolean isStored(String path) {
+        final Entry entry = mEntries.get(normalize(path));
+        return entry != null && entry.method == METHOD_STORED;
+    }
+
+    /**
+     * Sets the max size of the cache of inflated entries, in bytes, 0 to disable the cache.
+     * The entries larger than a quarter of the cache size are never cached.
+     * */
+    public synchronized void setCacheSize(int size) {
+        mCacheSize = Math.max(size, 0);
+        trimCache();
+    }
+
+    /**
+     * Opens the stream to read specified file. The large compressed files are inflated
+     * while they are read.
+     * @throws FileNotFoundException If there is no such file.
+     * */
+    public InputStream open(String path) throws IOException {
+        final String name = normalize(path);
+        final Entry entry = getEntry(name);
+        if (entry.method == METHOD_STORED) return new ByteBufferInputStream(getData(entry));
+        final byte[] cached = getCached(name, entry);
+        if (cached != null) return new ByteArrayInputStream(cached);
+        // Inflater with "nowrap" needs an extra dummy byte at the end of input
+        final InputStream data = new SequenceInputStream(new ByteBufferInputStream(
+                getData(entry)), new ByteArrayInputStream(new byte[1]));
+        return new InflaterInputStream(data, new Inflater(true),
+                FileUtils.DEFAULT_BUFFER_SIZE) {
+            private boolean mClosed = false;
+            @Override
+            public void close() throws IOException {
+                if (mClosed) return;
+                mClosed = true;
+                inf.end();
+                super.close();
+            }
+        };
+    }
+
+    /**
+     * @return The content of specified file: the read-only memory-mapped buffer for stored
+     * files, or the inflated buffer for compressed ones.
+     * @throws FileNotFoundException If there is no such file.
+     * */
+    public ByteBuffer getBuffer(String path) throws IOException {
+        final String name = normalize(path);
+        final Entry entry = getEntry(name);
+        if (entry.method == METHOD_STORED) return getData(entry);
+        final byte[] cached = getCached(name, entry);
+        return ByteBuffer.wrap(cached != null ? cached : inflate(entry)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Closes the archive, the buffers returned by {@link #getBuffer(String)} stay valid.
+     * */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            mCache.clear();
+            mCached = 0;
+        }
+        mFile.close();
+    }
+
+    /**
+     * @return The file entry with specified name.
+     * @throws FileNotFoundException If there is no such file.
+     * */
+    private Entry getEntry(String name) throws FileNotFoundException {
+        final Entry entry = mEntries.get(name);
+        if (entry == null) throw new FileNotFoundException("No entry " + name);
+        if (entry.method != METHOD_STORED && entry.method != METHOD_DEFLATED) {
+            throw new FileNotFoundException("Unsupported compression of " + name);
+        }
+        return entry;
+    }
+
+    /**
+     * @return The inflated content of specified entry from the cache, or inflates it and
+     * puts to the cache, if it is small enough. Otherwise, null.
+     * */
+    private byte[] getCached(String name, Entry entry) throws IOException {
+        synchronized (this) {
+            final byte[] cached = mCache.get(name);
+            if (cached != null) return cached;
+        }
+        if (entry.size > mCacheSize / 4) return null;
+        final byte[] data = inflate(entry);
+        synchronized (this) {
+            if (mCache.put(name, data) == null) mCached += data.length;
+            trimCache();
+        }
+        return data;
+    }
+
+    /**
+     * Removes least recently used entries from the cache, while it is larger than limit.
+     * */
+    private synchronized void trimCache() {
+        final Iterator<byte[]> iterator = mCache.values().iterator();
+        while (mCached > mCacheSize && iterator.hasNext()) {
+            mCached -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return The inflated content of specified entry.
+     * */
+    private byte[] inflate(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8) throw new ZipException("The entry is too large");
+        final ByteBuffer data = getData(entry);
+        final byte[] input = new byte[data.remaining() + 1]; // Extra dummy byte for "nowrap"
+        data.get(input, 0, input.length - 1);
+        final byte[] output = new byte[(int) entry.size];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            int count = 0;
+            while (count < output.length && !inflater.finished()) {
+                final int n = inflater.inflate(output, count, output.length - count);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                count += n;
+            }
+            if (count != output.length) throw new ZipException("Invalid compressed data");
+            return output;
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The read-only buffer with compressed data of specified entry, without copying.
+     * */
+    private ByteBuffer getData(Entry entry) throws IOException {
+        final long offset = getDataOffset(entry);
+        if (mMap != null) {
+            final ByteBuffer buffer = mMap.duplicate();
+            buffer.limit((int) (offset + entry.compressedSize)).position((int) offset);
+            return buffer.slice();
+        }
+        return mChannel.map(FileChannel.MapMode.READ_ONLY, offset, entry.compressedSize);
+    }
+
+    /**
+     * @return The offset of data of specified entry, it is read from the local header on
+     * first access.
+     * */
+    private long getDataOffset(Entry entry) throws IOException {
+        if (entry.dataOffset >= 0) return entry.dataOffset;
+        final ByteBuffer header = read(entry.headerOffset, LOCAL_SIZE);
+        if (header.getInt(0) != SIG_LOCAL) throw new ZipException("Invalid local header");
+        final long offset = entry.headerOffset + LOCAL_SIZE + (header.getShort(26) & 0xFFFF)
+                + (header.getShort(28) & 0xFFFF);
+        entry.dataOffset = offset;
+        return offset;
+    }
+
+    /**
+     * @return The little-endian buffer with specified part of the archive.
+     * */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        final ByteBuffer buffer;
+        if (mMap != null) {
+            final ByteBuffer map = mMap.duplicate();
+            map.limit((int) (offset + length)).position((int) offset);
+            buffer = map.slice();
+        } else {
+            buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (mChannel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new ZipException("Unexpected end of archive");
+                }
+            }
+            buffer.flip();
+        }
+        return buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The file entry of the archive.
+     * */
+    private static final class Entry {
+
+        /** The compression method. */
+        final int method;
+
+        /** The size of compressed data. */
+        final long compressedSize;
+
+        /** The size of uncompressed data. */
+        final long size;
+
+        /** The offset of local header. */
+        final long headerOffset;
+
+        /** The offset of data, or -1 if it is unknown yet. */
+        volatile long dataOffset = -1;
+
+        /**
+         * Construct a new {@link Entry} instance with specified parameters.
+         * */
+        Entry(int method, long compressedSize, long size, long headerOffset) {
+            this.method = method; this.compressedSize = compressedSize; this.size = size;
+            this.headerOffset = headerOffset;
+        }
+    }
+}
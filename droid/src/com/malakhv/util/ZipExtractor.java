@@ -0,0 +1,432 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts zip archives. The entries are read via {@link ZipFile}, by central directory, so
+ * all directories are created up front, and the files are inflated in parallel, by bounded
+ * pool of threads with pooled buffers.
+ * <p>The entries which would be extracted outside of the target directory (zip slip) are
+ * rejected before anything is written. Each file is written to a temporary file and
+ * renamed, so an interrupted extraction never leaves a partial file. If the progress file
+ * is set, the extracted entries are recorded, and the next extraction skips them, so it
+ * resumes where the previous one stopped.</p>
+ * <pre>
+ *     int count = new ZipExtractor().setParallelism(4).setSkipExisting(true)
+ *             .setProgressFile(new File(targetDir, ".progress")).extract(zipFile, targetDir);
+ * </pre>
+ * @see ZipUtils#unzipTo(File, File)
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ZipExtractor {
+
+    /** The tag for LogCat. */
+    private static final String TAG = ZipExtractor.class.getSimpleName();
+
+    /** The default buffer size to inflate entries. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The suffix of partially extracted files. */
+    private static final String PART_SUFFIX = ".part";
+
+    /** The separator of fields in the progress file. */
+    private static final char PROGRESS_SEPARATOR = '\t';
+
+    /**
+     * The filter of entries to extract.
+     * */
+    public interface Filter {
+        /**
+         * @return True, if specified entry should be extracted.
+         * */
+        boolean accept(ZipEntry entry);
+    }
+
+    /**
+     * The listener of extraction progress.
+     * */
+    public interface Listener {
+        /**
+         * Called after each processed (extracted or skipped) file entry, it can be called
+         * from several threads.
+         * @param entry The name of processed entry.
+         * @param count The number of processed file entries.
+         * */
+        void onProgress(String entry, long count);
+    }
+
+    /** The number of threads, 1 to extract in the caller thread. */
+    private int mParallelism = FileWalker.DEFAULT_PARALLELISM;
+
+    /** The buffer size to inflate entries. */
+    private int mBufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** The filter of entries, or null to extract all entries. */
+    private Filter mFilter = null;
+
+    /** True, if existing files with the same size and CRC should be skipped. */
+    private boolean mSkipExisting = false;
+
+    /** The file to record extracted entries, or null. */
+    private File mProgressFile = null;
+
+    /** The progress listener, or null. */
+    private Listener mListener = null;
+
+    /**
+     * Sets the number of threads, 1 to extract in the caller thread.
+     * */
+    public ZipExtractor setParallelism(int parallelism) {
+        mParallelism = Math.max(parallelism, 1);
+        return this;
+    }
+
+    /**
+     * Sets the buffer size to inflate entries, in bytes.
+     * */
+    public ZipExtractor setBufferSize(int size) {
+        mBufferSize = size > 0 ? size : DEFAULT_BUFFER_SIZE;
+        return this;
+    }
+
+    /**
+     * Sets the filter of entries to extract, by default, all entries are extracted.
+     * */
+    public ZipExtractor setFilter(Filter filter) {
+        mFilter = filter;
+        return this;
+    }
+
+    /**
+     * Sets whether the existing files, which have the same size and CRC as entries, should
+     * be skipped instead of being extracted again.
+     * */
+    public ZipExtractor setSkipExisting(boolean skip) {
+        mSkipExisting = skip;
+        return this;
+    }
+
+    /**
+     * Sets the file to record extracted entries. The entries recorded by previous
+     * (interrupted) extraction are skipped, if their files still have the recorded size.
+     * The file is removed when the extraction is finished successfully.
+     * */
+    public ZipExtractor setProgressFile(File file) {
+        mProgressFile = file;
+        return this;
+    }
+
+    /**
+     * Sets the progress listener.
+     * */
+    public ZipExtractor setListener(Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * Extracts all entries of {@code zip} file to {@code dir} directory, the existing files
+     * are replaced.
+     * @return The number of extracted files, without skipped ones.
+     * @throws ZipException If any entry is outside of the target directory.
+     * @throws IOException If the archive cannot be read, or any entry cannot be written.
+     * */
+    public int extract(File zip, File dir) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            final String root = dir.getCanonicalPath();
+            final Map<String, Long> done = readProgress();
+
+            // Collect files and all directories, including parents of files
+            final List<ZipEntry> files = new ArrayList<>(zipFile.size());
+            final Set<String> dirs = new TreeSet<>();
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                checkPath(root, dir, name);
+                if (mFilter != null && !mFilter.accept(entry)) continue;
+                if (entry.isDirectory()) {
+                    dirs.add(name);
+                } else {
+                    files.add(entry);
+                    final int slash = name.lastIndexOf('/');
+                    if (slash > 0) dirs.add(name.substring(0, slash));
+                }
+            }
+
+            // Create directories up front, so files don't depend on the order of entries
+            for (String name : dirs) {
+                final File target = new File(dir, name);
+                if (!target.isDirectory() && !target.mkdirs()) {
+                    throw new IOException("Cannot create " + target);
+                }
+            }
+
+            // Inflate files
+            final Progress progress = new Progress(done);
+            try {
+                if (mParallelism == 1 || files.size() < 2) {
+                    for (ZipEntry entry : files) extractEntry(zipFile, entry, dir, progress);
+                } else {
+                    extractAll(zipFile, files, dir, progress);
+                }
+            } finally {
+                progress.close();
+            }
+            if (mProgressFile != null) FileUtils.delete(mProgressFile);
+            return progress.mExtracted.get();
+        }
+    }
+
+    /**
+     * @throws ZipException If the entry with specified name would be extracted outside of
+     * {@code dir} directory, which has specified canonical path.
+     * */
+    private static void checkPath(String root, File dir, String name) throws IOException {
+        final String path = new File(dir, name).getCanonicalPath();
+        if (!path.equals(root) && !path.startsWith(root + File.separator)) {
+            throw new ZipException("The entry is outside of target directory: " + name);
+        }
+    }
+
+    /**
+     * @return The entries recorded in the progress file, with their sizes.
+     * */
+    private Map<String, Long> readProgress() {
+        final Map<String, Long> done = new HashMap<>();
+        if (mProgressFile == null || !mProgressFile.isFile()) return done;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(mProgressFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.lastIndexOf(PROGRESS_SEPARATOR);
+                if (separator <= 0) break;
+                done.put(line.substring(0, separator),
+                        Long.parseLong(line.substring(separator + 1)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // The last record may be broken, use the ones which have been read
+        }
+        return done;
+    }
+
+    /**
+     * Extracts specified file entries in parallel.
+     * */
+    private void extractAll(final ZipFile zipFile, List<ZipEntry> files, final File dir,
+            final Progress progress) throws IOException {
+        final ExecutorService pool = mParallelism == FileWalker.DEFAULT_PARALLELISM
+                ? FileWalker.getPool() : Executors.newFixedThreadPool(mParallelism);
+        final List<Future<?>> futures = new ArrayList<>(files.size());
+        try {
+            for (final ZipEntry entry : files) {
+                futures.add(pool.submit(() -> {
+                    extractEntry(zipFile, entry, dir, progress);
+                    return null;
+                }));
+            }
+            awaitAll(futures);
+        } finally {
+            if (pool != FileWalker.getPool()) pool.shutdown();
+        }
+    }
+
+    /**
+     * Waits for all specified tasks. If any task fails, the tasks which have not been
+     * started yet are cancelled, and the running ones are awaited, so the archive is not
+     * closed while they read it.
+     * @throws IOException The first error of the tasks.
+     * */
+    static void awaitAll(List<Future<?>> futures) throws IOException {
+        Throwable error = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (CancellationException e) {
+                // Cancelled after an error
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause();
+                    for (Future<?> f : futures) f.cancel(false);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> f : futures) f.cancel(false);
+                throw new InterruptedIOException("Waiting has been interrupted");
+            }
+        }
+        if (error instanceof IOException) throw (IOException) error;
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        if (error != null) throw new IOException(error);
+    }
+
+    /**
+     * Inflates specified file entry to {@code dir} directory, if it has not been extracted
+     * yet.
+     * */
+    private void extractEntry(ZipFile zipFile, ZipEntry entry, File dir, Progress progress)
+            throws IOException {
+        final String name = entry.getName();
+        final File target = new File(dir, name);
+        if (isExtracted(entry, target, progress)) {
+            progress.onEntry(name, -1, false);
+            return;
+        }
+        final File part = new File(dir, name + PART_SUFFIX);
+        final byte[] buffer = BufferPool.acquire(mBufferSize);
+        long size = 0;
+        try (InputStream in = zipFile.getInputStream(entry);
+             FileOutputStream out = new FileOutputStream(part)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            FileUtils.delete(part);
+            throw e;
+        } finally {
+            BufferPool.release(buffer);
+        }
+        if (!part.renameTo(target)) {
+            FileUtils.delete(part);
+            throw new IOException("Cannot write " + target);
+        }
+        progress.onEntry(name, size, true);
+    }
+
+    /**
+     * @return True, if specified entry has been already extracted to {@code target} file:
+     * it is recorded in the progress file, or it has the same size and CRC.
+     * */
+    private boolean isExtracted(ZipEntry entry, File target, Progress progress)
+            throws IOException {
+        final Long recorded = progress.mDone.get(entry.getName());
+        if (recorded != null && target.length() == recorded
+                && (entry.getSize() < 0 || entry.getSize() == recorded)) return true;
+        if (!mSkipExisting || entry.getSize() < 0 || entry.getCrc() < 0) return false;
+        if (!target.isFile() || target.length() != entry.getSize()) return false;
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = BufferPool.acquire(mBufferSize);
+        try (InputStream in = new FileInputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) crc.update(buffer, 0, read);
+        } finally {
+            BufferPool.release(buffer);
+        }
+        return crc.getValue() == entry.getCrc();
+    }
+
+    /**
+     * The progress of one extraction.
+     * */
+    private final class Progress {
+
+        /** The entries extracted before, with their sizes. */
+        final Map<String, Long> mDone;
+
+        /** The number of extracted files. */
+        final AtomicInteger mExtracted = new AtomicInteger();
+
+        /** The number of processed files. */
+        private final AtomicLong mProcessed = new AtomicLong();
+
+        /** The writer of the progress file, or null. */
+        private Writer mWriter = null;
+
+        /**
+         * Construct a new {@link Progress} instance with specified entries extracted before.
+         * */
+        Progress(Map<String, Long> done) {
+            mDone = done;
+        }
+
+        /**
+         * Called when an entry has been processed.
+         * @param size The size of extracted file, if it has been extracted.
+         * @param extracted True, if the entry has been extracted, or false if skipped.
+         * */
+        void onEntry(String name, long size, boolean extracted) throws IOException {
+            if (extracted) {
+                mExtracted.incrementAndGet();
+                record(name, size);
+            }
+            final long count = mProcessed.incrementAndGet();
+            final Listener listener = mListener;
+            if (listener != null) listener.onProgress(name, count);
+        }
+
+        /**
+         * Records extracted entry to the progress file.
+         * */
+        private synchronized void record(String name, long size) throws IOException {
+            if (mProgressFile == null) return;
+            if (mWriter == null) {
+                mWriter = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(mProgressFile, true), StandardCharsets.UTF_8));
+            }
+            mWriter.write(name);
+            mWriter.write(PROGRESS_SEPARATOR);
+            mWriter.write(Long.toString(size));
+            mWriter.write('\n');
+            mWriter.flush();
+        }
+
+        /**
+         * Closes the progress file.
+         * */
+        synchronized void close() throws IOException {
+            if (mWriter != null) mWriter.close();
+            mWriter = null;
+        }
+    }
+}
@@ -18,15 +18,9 @@
 
 package com.malakhv.util;
 
-import static com.malakhv.util.FileUtils.DEFAULT_BUFFER_SIZE;
-
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * Class contains some things to work with zip archives.
@@ -38,11 +32,14 @@ public final class ZipUtils {
     /** The tag for LogCat. */
     private static final String TAG = ZipUtils.class.getSimpleName();
 
+    /** The suffix of unzipping progress files. */
+    private static final String PROGRESS_SUFFIX = ".progress";
+
     /**
      * Unzips specified file to specified path. If zip file has root dir, it will be
-     * unzipped as {@code unzipPath/zip_root_dir/*}.
+     * unzipped as {@code unzipPath/zip_root_dir/*}. The entries outside of
+     * {@code unzipPath} are rejected before unzipping.
      * */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public static void unzipTo(File zipFile, File unzipPath) throws IOException {
 
         // Checking zipFile
@@ -59,27 +56,7 @@ public final class ZipUtils {
         }
 
         // Unzipping file to specified path
-        final ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFile));
-        ZipEntry zipEntry = zipInputStream.getNextEntry();
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int read;
-        while(zipEntry != null) {
-            final File f = new File(unzipPath, zipEntry.getName());
-            if (!zipEntry.isDirectory()) {
-                // Sometimes, we should unzip files in media dir before media dir entry. WTF???
-                FileOutputStream fos = new FileOutputStream(f);
-                while ((read = zipInputStream.read(buffer)) > 0) {
-                    fos.write(buffer, 0, read);
-                }
-                fos.close();
-            } else {
-                f.mkdirs();
-            }
-            zipInputStream.closeEntry();
-            zipEntry = zipInputStream.getNextEntry();
-        }
-        zipInputStream.closeEntry();
-        zipInputStream.close();
+        new ZipExtractor().extract(zipFile, unzipPath);
     }
 
     /**
@@ -92,6 +69,46 @@ public final class ZipUtils {
         unzipTo(zf, up);
     }
 
+    /**
+     * Unzips the entries of specified file, accepted by {@code filter}, to specified path.
+     * The files which already exist with the same size and CRC are skipped, and the
+     * progress is recorded in {@code unzipPath}, so an interrupted unzipping continues
+     * where it stopped when this method is called again.
+     * @param filter The filter of entries, or null to unzip all entries.
+     * @return The number of unzipped files, without skipped ones.
+     * @throws java.util.zip.ZipException If any entry is outside of {@code unzipPath}.
+     * @see ZipExtractor
+     * */
+    public static int unzipTo(File zipFile, File unzipPath, ZipExtractor.Filter filter)
+            throws IOException {
+        if (!zipFile.exists()) {
+            throw new FileNotFoundException("The input zip file not found.");
+        }
+        if (!unzipPath.isDirectory() && !unzipPath.mkdirs()) {
+            throw new IOException("Cannot create output directory.");
+        }
+        final File progress = new File(unzipPath, StrUtils.CHAR_DOT + zipFile.getName()
+                + PROGRESS_SUFFIX);
+        return new ZipExtractor().setFilter(filter).setSkipExisting(true)
+                .setProgressFile(progress).extract(zipFile, unzipPath);
+    }
+
+    /**
+     * Zips specified file or directory (with all its content, as the root directory of
+     * the archive) to specified zip file.
+     * @see ZipWriter
+     * */
+    public static void zipTo(File source, File zipFile) throws IOException {
+        if (!source.exists()) throw new FileNotFoundException("The input file not found.");
+        try (ZipWriter zip = new ZipWriter(zipFile)) {
+            if (source.isDirectory()) {
+                zip.addDirectory(source.getName(), source);
+            } else {
+                zip.addFile(source.getName(), source);
+            }
+        }
+    }
+
     /**
      * This class has only static data, not need to create instance.
      * */
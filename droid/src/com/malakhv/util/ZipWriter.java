@@ -0,0 +1,702 @@
+/* *
+ * Copyright (C) 1996-2026 Mikhail Malakhov <malakhv@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.
+ *
+ * See the License for the specific language governing permissions
+ * and limitations under the License.
+ * */
+
+package com.malakhv.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes zip archives from files, directories, streams and byte arrays. The entries can be
+ * compressed (DEFLATED) with specified level or stored as is (STORED), for example, media
+ * files which are already compressed. The small entries are deflated in parallel (see
+ * {@link #setParallelism(int)}), and written in the order they have been added; the large
+ * entries and the streams are deflated in the caller thread, without loading them to
+ * memory.
+ * <p>ZIP64 is not supported: the archive and each entry must be less than 4 GB, and there
+ * must be less than 65535 entries.</p>
+ * <pre>
+ *     try (ZipWriter zip = new ZipWriter(bundleFile)) {
+ *         zip.addDirectory("logs/", logsDir);
+ *         zip.addFile("photo.jpg", photo, true);
+ *         zip.addStream("export.jsonl", exportStream);
+ *     }
+ * </pre>
+ * @see ZipExtractor
+ * @author <a href="https://github.com/malakhv">Mikhail.Malakhov</a>
+ * */
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class ZipWriter implements Closeable {
+
+    /** The tag for LogCat. */
+    private static final String TAG = ZipWriter.class.getSimpleName();
+
+    /** The entries larger than this size are deflated in the caller thread. */
+    public static final int MAX_PARALLEL_SIZE = 4 * 1024 * 1024;
+
+    /** The compression methods. */
+    private static final int METHOD_STORED = 0, METHOD_DEFLATED = 8;
+
+    /** The general purpose flags: data descriptor and UTF-8 names. */
+    private static final int FLAG_DESCRIPTOR = 0x08, FLAG_UTF8 = 0x0800;
+
+    /** The record signatures. */
+    private static final int SIG_LOCAL = 0x04034b50, SIG_DESCRIPTOR = 0x08074b50,
+            SIG_CENTRAL = 0x02014b50, SIG_END = 0x06054b50;
+
+    /** The version needed to extract (2.0). */
+    private static final int VERSION = 20;
+
+    /** The max value of 32-bit fields. */
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    /** The max number of entries. */
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    /** The external attribute of directory entries (MS-DOS directory). */
+    private static final int ATTR_DIRECTORY = 0x10;
+
+    /** The archive output stream. */
+    private final OutputStream mOut;
+
+    /** The written entries, for the central directory. */
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /** The names of added entries. */
+    private final Set<String> mNames = new HashSet<>();
+
+    /** The entries which are being deflated in parallel, in order they have been added. */
+    private final ArrayDeque<Future<Entry>> mPending = new ArrayDeque<>();
+
+    /** The number of written bytes. */
+    private long mOffset = 0;
+
+    /** The compression level, 0 to store entries. */
+    private int mLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** The number of threads to deflate entries, 1 to deflate in the caller thread. */
+    private int mParallelism = FileWalker.DEFAULT_PARALLELISM;
+
+    /** The pool to deflate entries, it is created lazily. */
+    private ExecutorService mPool = null;
+
+    /** True, if the central directory has been written. */
+    private boolean mFinished = false;
+
+    /**
+     * Construct a new {@link ZipWriter} instance to write specified file.
+     * */
+    public ZipWriter(File file) throws FileNotFoundException {
+        this(new FileOutputStream(file));
+    }
+
+    /**
+     * Construct a new {@link ZipWriter} instance to write to specified stream, the stream
+     * is closed by {@link #close()}.
+     * */
+    public ZipWriter(OutputStream out) {
+        mOut = new BufferedOutputStream(out, FileUtils.DEFAULT_BUFFER_SIZE * 8);
+    }
+
+    /**
+     * Sets the compression level, from 0 (store) to 9 (best), or
+     * {@link Deflater#DEFAULT_COMPRESSION}. It is applied to entries added after this call.
+     * */
+    public ZipWriter setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        mLevel = level;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads to deflate entries, 1 to deflate in the caller thread.
+     * By default, the shared pool of {@link FileWalker} is used, with other values, this
+     * instance has its own pool, which is shut down by {@link #close()}.
+     * */
+    public ZipWriter setParallelism(int parallelism) {
+        mParallelism = Math.max(parallelism, 1);
+        // The submitted entries are still deflated by the old pool
+        shutdownPool();
+        return this;
+    }
+
+    /**
+     * Adds the directory entry, the name should end with {@code /}.
+     * */
+    public void addDirectory(String name) throws IOException {
+        final String dir = name.endsWith("/") ? name : name + "/";
+        checkName(dir);
+        enqueue(new Entry(dir, METHOD_STORED, System.currentTimeMillis()).setData(
+                new byte[0], new CRC32(), 0));
+    }
+
+    /**
+     * Adds specified directory with all its content, as entries with specified prefix
+     * (for example, {@code logs/}, or empty string for the root of the archive). The
+     * entries are added in order of names. Symbolic links to directories are skipped, so
+     * a link cannot make a cycle.
+     * */
+    public void addDirectory(String prefix, File dir) throws IOException {
+        final String path = StrUtils.isEmpty(prefix) || prefix.endsWith("/") ? prefix
+                : prefix + "/";
+        if (!StrUtils.isEmpty(path)) addDirectory(path);
+        final File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files);
+        for (File file : files) {
+            final String name = (path != null ? path : "") + file.getName();
+            if (file.isDirectory()) {
+                if (FileUtils.isLink(file)) continue;
+                addDirectory(name + "/", file);
+            } else {
+                addFile(name, file);
+            }
+        }
+    }
+
+    /**
+     * Adds specified file, it is compressed with current level.
+     * */
+    public void addFile(String name, File file) throws IOException {
+        addFile(name, file, mLevel == 0);
+    }
+
+    /**
+     * Adds specified file, it is stored as is, if {@code stored} is true, or compressed
+     * with current level.
+     * */
+    public void addFile(String name, final File file, boolean stored) throws IOException {
+        checkName(name);
+        final long time = file.lastModified();
+        final long length = file.length();
+        if (length > MAX_PARALLEL_SIZE || mParallelism == 1) {
+            drain();
+            if (stored) {
+                writeStored(name, file, time);
+            } else {
+                try (InputStream in = new FileInputStream(file)) {
+                    writeDeflated(new Entry(name, METHOD_DEFLATED, time), in);
+                }
+            }
+            return;
+        }
+        final int level = mLevel;
+        enqueue(getPool().submit(() -> prepare(new Entry(name,
+                stored ? METHOD_STORED : METHOD_DEFLATED, time), readFile(file), level)));
+    }
+
+    /**
+     * Adds the content of specified stream, it is compressed with current level. The
+     * stream is read to the end, but not closed.
+     * */
+    public void addStream(String name, InputStream in) throws IOException {
+        addStream(name, in, mLevel == 0);
+    }
+
+    /**
+     * Adds the content of specified stream, it is stored as is, if {@code stored} is true,
+     * or compressed with current level. The stream is read to the end, but not closed.
+     * The content of stored entries is buffered in memory, because their size and CRC must
+     * be written before the data.
+     * */
+    public void addStream(String name, InputStream in, boolean stored) throws IOException {
+        checkName(name);
+        if (stored) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            FileUtils.copy(in, out);
+            enqueue(prepare(new Entry(name, METHOD_STORED, System.currentTimeMillis()),
+                    out.toByteArray(), 0));
+            return;
+        }
+        drain();
+        writeDeflated(new Entry(name, METHOD_DEFLATED, System.currentTimeMillis()), in);
+    }
+
+    /**
+     * Adds specified data, it is stored as is, if {@code stored} is true, or compressed
+     * with current level.
+     * */
+    public void addBytes(String name, final byte[] data, boolean stored) throws IOException {
+        checkName(name);
+        final Entry entry = new Entry(name, stored ? METHOD_STORED : METHOD_DEFLATED,
+                System.currentTimeMillis());
+        final int level = mLevel;
+        if (stored || mParallelism == 1 || data.length > MAX_PARALLEL_SIZE) {
+            enqueue(prepare(entry, data, level));
+        } else {
+            enqueue(getPool().submit(() -> prepare(entry, data, level)));
+        }
+    }
+
+    /**
+     * Writes all pending entries and the central directory. The stream is not closed.
+     * @throws ZipException If there are too many entries.
+     * */
+    public void finish() throws IOException {
+        if (mFinished) return;
+        drain();
+        if (mEntries.size() > MAX_ENTRIES) throw new ZipException("Too many entries");
+        final long start = mOffset;
+        for (Entry entry : mEntries) writeCentralHeader(entry);
+        final long size = mOffset - start;
+        if (start > MAX_SIZE) throw new ZipException("The archive is too large");
+        writeInt(SIG_END);
+        writeShort(0); // Number of this disk
+        writeShort(0); // Disk with central directory
+        writeShort(mEntries.size());
+        writeShort(mEntries.size());
+        writeInt(size);
+        writeInt(start);
+        writeShort(0); // Comment length
+        mOut.flush();
+        mFinished = true;
+    }
+
+    /**
+     * Finishes the archive and closes the stream.
+     * */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            for (Future<Entry> future : mPending) future.cancel(false);
+            mPending.clear();
+            shutdownPool();
+            mOut.close();
+        }
+    }
+
+    /**
+     * @return The pool to deflate entries.
+     * */
+    private ExecutorService getPool() {
+        if (mPool == null) {
+            mPool = mParallelism == FileWalker.DEFAULT_PARALLELISM ? FileWalker.getPool()
+                    : Executors.newFixedThreadPool(mParallelism);
+        }
+        return mPool;
+    }
+
+    /**
+     * Shuts down own pool (not the shared one), if it has been created.
+     * */
+    private void shutdownPool() {
+        if (mPool != null && mPool != FileWalker.getPool()) mPool.shutdown();
+        mPool = null;
+    }
+
+    /**
+     * @throws IllegalArgumentException If the name is empty or it is already used.
+     * @throws IllegalStateException If the archive is finished.
+     * */
+    private void checkName(String name) {
+        if (mFinished) throw new IllegalStateException("The archive is finished");
+        if (StrUtils.isEmpty(name) || name.startsWith("/")) {
+            throw new IllegalArgumentException("Invalid entry name: " + name);
+        }
+        if (!mNames.add(name)) throw new IllegalArgumentException("Duplicate entry: " + name);
+    }
+
+    /**
+     * Adds prepared entry to the queue of entries to write.
+     * */
+    private void enqueue(Entry entry) throws IOException {
+        if (mPending.isEmpty()) {
+            writePrepared(entry);
+        } else {
+            enqueue(new CompletedFuture(entry));
+        }
+    }
+
+    /**
+     * Adds the entry which is being prepared to the queue of entries to write. If there
+     * are too many pending entries, the first ones are written.
+     * */
+    private void enqueue(Future<Entry> future) throws IOException {
+        mPending.add(future);
+        while (mPending.size() > mParallelism * 2) writePrepared(await(mPending.poll()));
+    }
+
+    /**
+     * Writes all pending entries.
+     * */
+    private void drain() throws IOException {
+        while (!mPending.isEmpty()) writePrepared(await(mPending.poll()));
+    }
+
+    /**
+     * @return The entry prepared by specified task.
+     * */
+    private static Entry await(Future<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing has been interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return Specified entry with the data to write: the CRC is computed, and the data is
+     * deflated, if needed.
+     * */
+    private static Entry prepare(Entry entry, byte[] data, int level) {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if (entry.method == METHOD_STORED) return entry.setData(data, crc, data.length);
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    Math.max(data.length / 2, 64));
+            final byte[] buffer = BufferPool.acquire(FileUtils.DEFAULT_BUFFER_SIZE);
+            try {
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                BufferPool.release(buffer);
+            }
+            return entry.setData(out.toByteArray(), crc, data.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return The content of specified file.
+     * */
+    private static byte[] readFile(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            FileUtils.copy(in, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Writes the entry with prepared data.
+     * */
+    private void writePrepared(Entry entry) throws IOException {
+        writeLocalHeader(entry);
+        write(entry.data, 0, entry.data.length);
+        entry.data = null;
+        mEntries.add(entry);
+    }
+
+    /**
+     * Writes specified file as stored entry: the CRC is computed by the first pass, and
+     * the data is copied by the second one.
+     * */
+    private void writeStored(String name, File file, long time) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = BufferPool.acquire(FileUtils.DEFAULT_BUFFER_SIZE);
+        try {
+            long size = 0;
+            try (InputStream in = new FileInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            final Entry entry = new Entry(name, METHOD_STORED, time);
+            entry.crc = crc.getValue();
+            entry.size = entry.compressedSize = checkSize(size);
+            writeLocalHeader(entry);
+            try (InputStream in = new FileInputStream(file)) {
+                long left = size;
+                int read;
+                while (left > 0 && (read = in.read(buffer, 0,
+                        (int) Math.min(buffer.length, left))) != -1) {
+                    write(buffer, 0, read);
+                    left -= read;
+                }
+                if (left != 0) throw new IOException("The file has been changed: " + file);
+            }
+            mEntries.add(entry);
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Writes the content of specified stream as deflated entry, with data descriptor,
+     * because the size and CRC are unknown before the data.
+     * */
+    private void writeDeflated(Entry entry, InputStream in) throws IOException {
+        entry.flags |= FLAG_DESCRIPTOR;
+        writeLocalHeader(entry);
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(mLevel, true);
+        final byte[] input = BufferPool.acquire(FileUtils.DEFAULT_BUFFER_SIZE);
+        final byte[] output = BufferPool.acquire(FileUtils.DEFAULT_BUFFER_SIZE * 2);
+        try {
+            int read;
+            while ((read = in.read(input)) != -1) {
+                crc.update(input, 0, read);
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) write(output, 0, deflater.deflate(output));
+            entry.crc = crc.getValue();
+            entry.size = checkSize(deflater.getBytesRead());
+            entry.compressedSize = checkSize(deflater.getBytesWritten());
+        } finally {
+            deflater.end();
+            BufferPool.release(input);
+            BufferPool.release(output);
+        }
+        writeInt(SIG_DESCRIPTOR);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        mEntries.add(entry);
+    }
+
+    /**
+     * Writes the local file header of specified entry, and remembers its offset.
+     * */
+    private void writeLocalHeader(Entry entry) throws IOException {
+        entry.offset = checkSize(mOffset);
+        final boolean descriptor = (entry.flags & FLAG_DESCRIPTOR) != 0;
+        writeInt(SIG_LOCAL);
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.time);
+        writeInt(descriptor ? 0 : entry.crc);
+        writeInt(descriptor ? 0 : entry.compressedSize);
+        writeInt(descriptor ? 0 : entry.size);
+        writeShort(entry.name.length);
+        writeShort(0); // Extra field length
+        write(entry.name, 0, entry.name.length);
+    }
+
+    /**
+     * Writes the central directory header of specified entry.
+     * */
+    private void writeCentralHeader(Entry entry) throws IOException {
+        writeInt(SIG_CENTRAL);
+        writeShort(VERSION); // Version made by
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.time);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(0); // Extra field length
+        writeShort(0); // Comment length
+        writeShort(0); // Disk number
+        writeShort(0); // Internal attributes
+        writeInt(entry.directory ? ATTR_DIRECTORY : 0);
+        writeInt(entry.offset);
+        write(entry.name, 0, entry.name.length);
+    }
+
+    /**
+     * @return Specified size or offset.
+     * @throws ZipException If it doesn't fit to 32-bit field.
+     * */
+    private static long checkSize(long size) throws ZipException {
+        if (size > MAX_SIZE) throw new ZipException("ZIP64 is not supported");
+        return size;
+    }
+
+    /**
+     * Writes specified bytes to the archive.
+     * */
+    private void write(byte[] b, int off, int len) throws IOException {
+        mOut.write(b, off, len);
+        mOffset += len;
+    }
+
+    /**
+     * Writes 16-bit value, in little-endian order.
+     * */
+    private void writeShort(int value) throws IOException {
+        mOut.write(value & 0xFF);
+        mOut.write((value >>> 8) & 0xFF);
+        mOffset += 2;
+    }
+
+    /**
+     * Writes 32-bit value, in little-endian order.
+     * */
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    /**
+     * @return The time in MS-DOS format: the date in high 16 bits, the time in low ones.
+     * */
+    static long toDosTime(long time) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) return (1 << 21) | (1 << 16); // 1980-01-01
+        return ((long) (year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    /**
+     * The entry of the archive.
+     * */
+    private static final class Entry {
+
+        /** The name, in UTF-8. */
+        final byte[] name;
+
+        /** True, if it is a directory entry. */
+        final boolean directory;
+
+        /** The compression method. */
+        final int method;
+
+        /** The modification time, in MS-DOS format. */
+        final long time;
+
+        /** The general purpose flags. */
+        int flags = FLAG_UTF8;
+
+        /** The CRC-32 of uncompressed data. */
+        long crc = 0;
+
+        /** The size of uncompressed data. */
+        long size = 0;
+
+        /** The size of compressed data. */
+        long compressedSize = 0;
+
+        /** The offset of local header. */
+        long offset = 0;
+
+        /** The data to write, or null. */
+        byte[] data = null;
+
+        /**
+         * Construct a new {@link Entry} instance with specified parameters.
+         * */
+        Entry(String name, int method, long time) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.directory = name.endsWith("/");
+            this.method = method;
+            this.time = toDosTime(time);
+        }
+
+        /**
+         * Sets the data to write.
+         * @return This entry.
+         * */
+        Entry setData(byte[] data, CRC32 crc, long size) {
+            this.data = data;
+            this.crc = crc.getValue();
+            this.size = size;
+            this.compressedSize = data.length;
+            return this;
+        }
+    }
+
+    /**
+     * The completed task, it keeps the order of prepared entries among pending ones.
+     * */
+    private static final class CompletedFuture implements Future<Entry> {
+
+        /** The entry. */
+        private final Entry mEntry;
+
+        /**
+         * Construct a new {@link CompletedFuture} instance with specified entry.
+         * */
+        CompletedFuture(Entry entry) {
+            mEntry = entry;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean isDone() {
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Entry get() {
+            return mEntry;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public Entry get(long timeout, TimeUnit unit) {
+            return mEntry;
+        }
+    }
+}